@@ -11,6 +11,9 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * FFmpeg Configuration
@@ -51,6 +54,12 @@ public class FFmpegConfig {
      */
     private int hlsListSize;
 
+    /**
+     * HLS segment container: mpegts (one .ts file per segment) or fmp4
+     * (one fragmented MP4 per rendition, segments addressed by byte range)
+     */
+    private String hlsSegmentType = "mpegts";
+
     /**
      * Video bitrates for different qualities (in kbps)
      */
@@ -61,6 +70,154 @@ public class FFmpegConfig {
      */
     private int[] videoResolutions;
 
+    /**
+     * Encode all renditions in one ffmpeg invocation (decode once, split and scale),
+     * instead of one ffmpeg job per rendition
+     */
+    private boolean singlePass;
+
+    /**
+     * Threads per ffmpeg job (0 lets ffmpeg use every core)
+     */
+    private int threads;
+
+    /**
+     * Seconds an ffprobe run may take before it is killed (0 waits indefinitely),
+     * bounding probes of sources read over the network
+     */
+    private int probeTimeout = 30;
+
+    /**
+     * Per-title encoding: size each rendition's bitrate to the source's complexity
+     * (configured bitrates become the ceiling) and drop renditions that add no quality
+     */
+    private boolean perTitle;
+
+    /**
+     * CRF of the complexity probe encode; its resulting bitrate is the quality target
+     */
+    private int perTitleCrf = 23;
+
+    /**
+     * Seconds of the source encoded by the complexity probe, taken from the middle
+     */
+    private int perTitleSampleSeconds = 60;
+
+    /**
+     * Lowest bitrate (kbps) per-title encoding assigns to a rendition
+     */
+    private int perTitleMinBitrate = 200;
+
+    /**
+     * A higher rendition is kept only if it needs at least this many times the bitrate of the next lower kept one
+     */
+    private double perTitleMinStep = 1.5;
+
+    /**
+     * Write storyboard sprite sheets and a WebVTT thumbnail track in the same pass as the renditions,
+     * under {outputDir}/storyboard/, for seek previews
+     */
+    private boolean storyboard;
+
+    /**
+     * Seconds between storyboard thumbnails
+     */
+    private int storyboardInterval = 10;
+
+    /**
+     * Thumbnails per row of a sprite sheet
+     */
+    private int storyboardColumns = 10;
+
+    /**
+     * Rows of thumbnails per sprite sheet
+     */
+    private int storyboardRows = 10;
+
+    /**
+     * Thumbnail width in pixels; the height follows the source aspect ratio
+     */
+    private int storyboardWidth = 160;
+
+    /**
+     * Encoder profile used by this node, a key of {@link #profiles}
+     */
+    private String profile = "balanced";
+
+    /**
+     * Encoder profiles by name; configured entries are added to (or replace) the built-in fast, balanced and quality
+     */
+    private Map<String, EncoderProfile> profiles = defaultProfiles();
+
+    /**
+     * libx264 settings trading encode speed for compression
+     */
+    @Data
+    public static class EncoderProfile {
+
+        /**
+         * x264 preset, ultrafast to veryslow
+         */
+        private String preset = "medium";
+
+        /**
+         * x264 tune (film, animation, grain, ...), empty for none
+         */
+        private String tune;
+
+        /**
+         * Threads per ffmpeg job, 0 to use ffmpeg.threads
+         */
+        private int threads;
+
+        /**
+         * abr (single-pass average bitrate), two-pass (two-pass average bitrate)
+         * or capped-crf (constant quality, capped at the rendition bitrate)
+         */
+        private String rateControl = "abr";
+
+        /**
+         * CRF of capped-crf rate control
+         */
+        private int crf = 23;
+
+        /**
+         * Frames of rate-control lookahead, 0 for the preset's default
+         */
+        private int lookahead;
+    }
+
+    /**
+     * The encoder profile of this node
+     */
+    public EncoderProfile activeProfile() {
+        return profiles.get(profile);
+    }
+
+    /**
+     * Threads each ffmpeg job uses under the active profile (0 means every core)
+     */
+    public int jobThreads() {
+        EncoderProfile active = activeProfile();
+        return active != null && active.getThreads() > 0 ? active.getThreads() : threads;
+    }
+
+    private static Map<String, EncoderProfile> defaultProfiles() {
+        Map<String, EncoderProfile> defaults = new LinkedHashMap<>();
+        defaults.put("fast", newProfile("veryfast", "abr", 10));
+        defaults.put("balanced", newProfile("medium", "capped-crf", 40));
+        defaults.put("quality", newProfile("slow", "two-pass", 60));
+        return defaults;
+    }
+
+    private static EncoderProfile newProfile(String preset, String rateControl, int lookahead) {
+        EncoderProfile profile = new EncoderProfile();
+        profile.setPreset(preset);
+        profile.setRateControl(rateControl);
+        profile.setLookahead(lookahead);
+        return profile;
+    }
+
     @PostConstruct
     public void init() {
         validatePaths();
@@ -88,10 +245,18 @@ public class FFmpegConfig {
             throw new ServiceException("Invalid HLS segment duration: " + hlsTime);
         }
 
+        if (threads < 0) {
+            throw new ServiceException("Invalid FFmpeg thread count: " + threads);
+        }
+
         if (hlsListSize < 0) {
             throw new ServiceException("Invalid HLS playlist size: " + hlsListSize);
         }
 
+        if (!"mpegts".equals(hlsSegmentType) && !"fmp4".equals(hlsSegmentType)) {
+            throw new ServiceException("Invalid HLS segment type: " + hlsSegmentType);
+        }
+
         // Validate video settings
         if (videoBitrates == null || videoBitrates.length == 0) {
             throw new ServiceException("Video bitrates not configured");
@@ -104,6 +269,25 @@ public class FFmpegConfig {
         if (videoBitrates.length != videoResolutions.length) {
             throw new ServiceException("Number of bitrates does not match number of resolutions");
         }
+
+        if (storyboard && (storyboardInterval <= 0 || storyboardColumns <= 0 || storyboardRows <= 0
+            || storyboardWidth <= 0)) {
+            throw new ServiceException("Invalid storyboard settings");
+        }
+
+        // Validate encoder profiles
+        if (activeProfile() == null) {
+            throw new ServiceException("Encoder profile not configured: " + profile);
+        }
+        for (Map.Entry<String, EncoderProfile> entry : profiles.entrySet()) {
+            if (!Set.of("abr", "two-pass", "capped-crf").contains(entry.getValue().getRateControl())) {
+                throw new ServiceException("Invalid rate control of encoder profile " + entry.getKey() + ": "
+                    + entry.getValue().getRateControl());
+            }
+            if (entry.getValue().getThreads() < 0) {
+                throw new ServiceException("Invalid thread count of encoder profile " + entry.getKey());
+            }
+        }
     }
 
     /**
@@ -0,0 +1,44 @@
+package org.dromara.common.ffmpeg.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Result of encoding the benchmark clip under one encoder profile
+ */
+@Data
+@AllArgsConstructor
+public class EncoderBenchmark {
+    /**
+     * profile name
+     */
+    private String profile;
+    /**
+     * x264 preset
+     */
+    private String preset;
+    /**
+     * rate control
+     */
+    private String rateControl;
+    /**
+     * threads of the ffmpeg job
+     */
+    private int threads;
+    /**
+     * frames encoded per second of wall time (both passes of a two-pass profile)
+     */
+    private double fps;
+    /**
+     * encode speed as a multiple of realtime
+     */
+    private double speed;
+    /**
+     * output size in bytes
+     */
+    private long size;
+    /**
+     * average output bitrate in kbps
+     */
+    private long bitrate;
+}
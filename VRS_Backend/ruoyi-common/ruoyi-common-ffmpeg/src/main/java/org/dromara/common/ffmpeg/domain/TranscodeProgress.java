@@ -0,0 +1,80 @@
+package org.dromara.common.ffmpeg.domain;
+
+import lombok.Data;
+
+/**
+ * Progress of one running ffmpeg transcode job
+ */
+@Data
+public class TranscodeProgress {
+
+    public static final String RUNNING = "RUNNING";
+    public static final String FINISHED = "FINISHED";
+    public static final String FAILED = "FAILED";
+    public static final String STALLED = "STALLED";
+
+    /**
+     * Job id: the video file id, with ":chunkIndex" appended for a chunk job
+     */
+    private String jobId;
+
+    /**
+     * Video file id
+     */
+    private Long videoFileId;
+
+    /**
+     * Chunk index for a chunk job, null for a whole-file job
+     */
+    private Integer chunkIndex;
+
+    /**
+     * What the job produces: "split", or the renditions being encoded (e.g. "480p,720p")
+     */
+    private String stage;
+
+    /**
+     * RUNNING / FINISHED / FAILED / STALLED
+     */
+    private String status;
+
+    /**
+     * Seconds of media the job encodes
+     */
+    private double duration;
+
+    /**
+     * Seconds of media encoded so far
+     */
+    private double outTime;
+
+    /**
+     * Percent complete (0-100)
+     */
+    private double percent;
+
+    /**
+     * Frames encoded so far
+     */
+    private long frame;
+
+    /**
+     * Frames encoded per second
+     */
+    private double fps;
+
+    /**
+     * Encode speed as a multiple of realtime
+     */
+    private double speed;
+
+    /**
+     * Job start time (epoch millis)
+     */
+    private long startTime;
+
+    /**
+     * Time of the last update (epoch millis)
+     */
+    private long updateTime;
+}
@@ -0,0 +1,26 @@
+package org.dromara.common.ffmpeg.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * One keyframe-aligned piece of a source video, transcoded independently
+ */
+@Data
+@AllArgsConstructor
+public class VideoChunk {
+    /**
+     * position of the chunk in the source, starting at 0
+     */
+    private int index;
+
+    /**
+     * chunk file path
+     */
+    private String path;
+
+    /**
+     * start time of the chunk in the source (seconds)
+     */
+    private double start;
+}
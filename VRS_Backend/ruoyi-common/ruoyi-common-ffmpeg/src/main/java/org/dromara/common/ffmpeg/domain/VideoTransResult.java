@@ -21,4 +21,8 @@ public class VideoTransResult {
      * duration
      */
     private long duration;
+    /**
+     * bitrate of each resolution in kbps
+     */
+    private List<Integer> bitrates;
 }
@@ -0,0 +1,17 @@
+package org.dromara.common.ffmpeg.progress;
+
+import org.dromara.common.ffmpeg.domain.TranscodeProgress;
+
+/**
+ * Receives progress of the transcode jobs run by FFmpegUtils; picked up as a bean when one is present
+ */
+public interface TranscodeProgressListener {
+
+    /**
+     * Called when a job starts, on every ffmpeg progress report, and once more when it ends
+     * (status FINISHED or FAILED). Reports arrive on ffmpeg's progress parser thread.
+     *
+     * @param progress a snapshot owned by the listener
+     */
+    void onProgress(TranscodeProgress progress);
+}
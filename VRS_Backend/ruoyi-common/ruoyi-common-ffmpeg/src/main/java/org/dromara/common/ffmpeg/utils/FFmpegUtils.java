@@ -5,20 +5,44 @@ import lombok.extern.slf4j.Slf4j;
 import net.bramp.ffmpeg.FFmpeg;
 import net.bramp.ffmpeg.FFmpegExecutor;
 import net.bramp.ffmpeg.FFprobe;
+import net.bramp.ffmpeg.RunProcessFunction;
 import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import net.bramp.ffmpeg.builder.FFmpegOutputBuilder;
 import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+import net.bramp.ffmpeg.probe.FFmpegStream;
 import org.dromara.common.core.exception.ServiceException;
+import org.dromara.common.core.utils.StringUtils;
+import org.dromara.common.core.utils.file.FileUtils;
 import org.dromara.common.ffmpeg.config.FFmpegConfig;
+import org.dromara.common.ffmpeg.domain.EncoderBenchmark;
+import org.dromara.common.ffmpeg.domain.TranscodeProgress;
+import org.dromara.common.ffmpeg.domain.VideoChunk;
 import org.dromara.common.ffmpeg.domain.VideoTransResult;
+import org.dromara.common.ffmpeg.progress.TranscodeProgressListener;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * FFmpeg Utility for Video Processing
@@ -29,6 +53,41 @@ import java.util.List;
 public class FFmpegUtils {
 
     private final FFmpegConfig config;
+    private final ObjectProvider<TranscodeProgressListener> progressListener;
+
+    private static final String FMP4 = "fmp4";
+    private static final String TWO_PASS = "two-pass";
+    private static final String CAPPED_CRF = "capped-crf";
+    /**
+     * Output of a first pass, discarded by the null muxer
+     */
+    private static final String NULL_OUTPUT = "-";
+    private static final int BENCHMARK_FPS = 30;
+    /**
+     * Storyboard directory under an output directory, its WebVTT track and sprite sheet names
+     */
+    private static final String STORYBOARD_DIR = "storyboard";
+    private static final String STORYBOARD_VTT = "storyboard.vtt";
+    private static final String SPRITE_PATTERN = "sprite_%03d.jpg";
+
+    /**
+     * Id of the tracked job the current thread is about to start
+     */
+    private static final ThreadLocal<String> CURRENT_JOB = new ThreadLocal<>();
+
+    /**
+     * ffmpeg process of each running tracked job, so a hung job can be killed
+     */
+    private final Map<String, Process> runningJobs = new ConcurrentHashMap<>();
+    private final RunProcessFunction runProcessFunction = new RunProcessFunction();
+    /**
+     * Kills ffprobe runs that outlive the probe timeout
+     */
+    private final ScheduledExecutorService probeWatchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ffprobe-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private FFmpeg ffmpeg;
     private FFprobe ffprobe;
@@ -38,8 +97,25 @@ public class FFmpegUtils {
      */
     public void init() {
         try {
-            ffmpeg = new FFmpeg(config.getFfmpegPath());
-            ffprobe = new FFprobe(config.getFfprobePath());
+            // ffmpeg is started on the thread running the job, which lets the process be tied to its job
+            ffmpeg = new FFmpeg(config.getFfmpegPath(), args -> {
+                Process process = runProcessFunction.run(args);
+                String jobId = CURRENT_JOB.get();
+                if (jobId != null) {
+                    runningJobs.put(jobId, process);
+                }
+                return process;
+            });
+            // A probe that hangs (e.g. on a stalled network source) is killed and fails instead of blocking its caller
+            ffprobe = new FFprobe(config.getFfprobePath(), args -> {
+                Process process = runProcessFunction.run(args);
+                if (config.getProbeTimeout() > 0) {
+                    ScheduledFuture<?> kill = probeWatchdog.schedule(process::destroyForcibly,
+                        config.getProbeTimeout(), TimeUnit.SECONDS);
+                    process.onExit().thenRun(() -> kill.cancel(false));
+                }
+                return process;
+            });
         } catch (IOException e) {
             log.error("Failed to initialize FFmpeg: ", e);
             throw new ServiceException("FFmpeg initialization failed");
@@ -56,84 +132,1061 @@ public class FFmpegUtils {
      * @return List of generated m3u8 playlist paths
      */
     public VideoTransResult convertToHls(String inputPath, Long videoFileId) {
+        return convertToHls(inputPath, videoFileId, null);
+    }
+
+    /**
+     * Convert video to HLS, encoding renditions lowest first when a callback is given.
+     * After each rendition but the last, the master playlist is rewritten to list the renditions
+     * finished so far and the callback is run (on the calling thread) so they can be published.
+     * In single-pass mode the lowest rendition is encoded by a job of its own and published first,
+     * then the remaining renditions share one split pass: a low-resolution encode costs a fraction
+     * of the full pass and the video is playable long before it ends.
+     *
+     * @param onRendition called with the renditions finished so far, the newest last, or null to encode everything at once
+     */
+    public VideoTransResult convertToHls(String inputPath, Long videoFileId, Consumer<VideoTransResult> onRendition) {
         try {
             if (ffmpeg == null || ffprobe == null) {
                 init();
             }
-            String outputDir = config.getOutputPath() + File.separator + videoFileId;
+            String outputDir = getOutputDir(videoFileId);
             // Create output directory if it doesn't exist
             Files.createDirectories(Paths.get(outputDir));
 
             // Get video information
             FFmpegProbeResult probeResult = ffprobe.probe(inputPath);
-            int originalHeight = probeResult.getStreams().get(0).height;
             long durations = Math.round(probeResult.getFormat().duration);
-            List<String> playlistPaths = new ArrayList<>();
-            List<String> resolutions = new ArrayList<>();
-            // Create variants for different qualities
+            int[] ladder = selectLadder(inputPath, probeResult, videoFileId);
+            List<Integer> variantIndexes = prepareVariants(outputDir, probeResult, ladder);
+            TranscodeProgress job = newJob(videoFileId, null, probeResult.getFormat().duration);
+
+            if (onRendition != null && variantIndexes.size() > 1 && config.isSinglePass()) {
+                int lowest = variantIndexes.stream()
+                    .min(Comparator.comparingInt(i -> config.getVideoResolutions()[i])).orElseThrow();
+                transcodeVariant(inputPath, outputDir, lowest, ladder[lowest], probeResult, 0, job,
+                    config.isStoryboard());
+                createMasterPlaylist(outputDir, List.of(lowest), ladder);
+                onRendition.accept(buildResult(outputDir, List.of(lowest), ladder, durations));
+
+                List<Integer> remaining = new ArrayList<>(variantIndexes);
+                remaining.remove(Integer.valueOf(lowest));
+                transcodeSinglePass(inputPath, outputDir, remaining, ladder, probeResult, 0, job, false);
+            } else if (onRendition != null && variantIndexes.size() > 1) {
+                // One job per rendition anyway: order them lowest first and publish each as it is written
+                List<Integer> ascending = new ArrayList<>(variantIndexes);
+                ascending.sort(Comparator.comparingInt(i -> config.getVideoResolutions()[i]));
+                List<Integer> finished = new ArrayList<>();
+                for (int i : ascending) {
+                    transcodeVariant(inputPath, outputDir, i, ladder[i], probeResult, 0, job,
+                        config.isStoryboard() && finished.isEmpty());
+                    finished.add(i);
+                    if (finished.size() < ascending.size()) {
+                        createMasterPlaylist(outputDir, finished, ladder);
+                        onRendition.accept(buildResult(outputDir, finished, ladder, durations));
+                    }
+                }
+            } else {
+                transcodeRenditions(inputPath, outputDir, variantIndexes, ladder, probeResult, 0, job,
+                    config.isStoryboard());
+            }
+
+            // Create master playlist
+            createMasterPlaylist(outputDir, variantIndexes, ladder);
+            return buildResult(outputDir, variantIndexes, ladder, durations);
+
+        } catch (IOException e) {
+            log.error("Failed to convert video to HLS: ", e);
+            throw new ServiceException("Video transcoding failed");
+        }
+    }
+
+    /**
+     * HLS output directory of a video file, known before transcoding starts
+     */
+    public String getOutputDir(Long videoFileId) {
+        return config.getOutputPath() + File.separator + videoFileId;
+    }
+
+    /**
+     * Source duration in seconds; fails once the probe timeout passes
+     */
+    public double probeDuration(String inputPath) {
+        try {
+            if (ffmpeg == null || ffprobe == null) {
+                init();
+            }
+            return ffprobe.probe(inputPath).getFormat().duration;
+        } catch (IOException e) {
+            log.error("Failed to probe video: ", e);
+            throw new ServiceException("Video probing failed");
+        }
+    }
+
+    /**
+     * Bitrate ladder for a source: kbps per configured resolution, 0 where the rendition is dropped.
+     * The configured bitrates unless per-title encoding is on.
+     *
+     * @param videoFileId video file the complexity pass is reported (and abortable) as
+     */
+    public int[] selectLadder(String inputPath, Long videoFileId) {
+        try {
+            if (ffmpeg == null || ffprobe == null) {
+                init();
+            }
+            return selectLadder(inputPath, ffprobe.probe(inputPath), videoFileId);
+        } catch (IOException e) {
+            log.error("Failed to analyze video complexity: ", e);
+            throw new ServiceException("Video complexity analysis failed");
+        }
+    }
+
+    /**
+     * Encode a synthetic testsrc clip under every encoder profile on this machine, so a profile can be
+     * chosen per node class from measured speed and size. Each profile targets the configured bitrate
+     * of the rendition closest to the given height.
+     *
+     * @param height  clip height (16:9, 30 fps)
+     * @param seconds clip length
+     */
+    public List<EncoderBenchmark> benchmark(int height, int seconds) {
+        if (ffmpeg == null || ffprobe == null) {
+            init();
+        }
+        int width = height * 16 / 9 / 2 * 2;
+        String source = "testsrc=size=" + width + "x" + height + ":rate=" + BENCHMARK_FPS + ":duration=" + seconds;
+        int closest = 0;
+        for (int i = 1; i < config.getVideoResolutions().length; i++) {
+            if (Math.abs(config.getVideoResolutions()[i] - height) < Math.abs(config.getVideoResolutions()[closest] - height)) {
+                closest = i;
+            }
+        }
+        int bitrate = config.getVideoBitrates()[closest];
+
+        List<EncoderBenchmark> results = new ArrayList<>();
+        for (Map.Entry<String, FFmpegConfig.EncoderProfile> entry : config.getProfiles().entrySet()) {
+            FFmpegConfig.EncoderProfile profile = entry.getValue();
+            int threads = profile.getThreads() > 0 ? profile.getThreads() : config.getThreads();
+            Path output = Paths.get(config.getTempPath(), UUID.randomUUID() + "_benchmark.mp4");
+            String passLog = TWO_PASS.equals(profile.getRateControl()) ? newPassLog() : null;
+            try {
+                long start = System.nanoTime();
+                if (passLog != null) {
+                    runJob(benchmarkBuilder(source, NULL_OUTPUT, "null", profile, bitrate, 1, passLog, threads), null, null);
+                }
+                runJob(benchmarkBuilder(source, output.toString(), "mp4", profile, bitrate, passLog != null ? 2 : 0,
+                    passLog, threads), null, null);
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                long size = Files.size(output);
+                EncoderBenchmark result = new EncoderBenchmark(entry.getKey(), profile.getPreset(), profile.getRateControl(),
+                    threads, (double) seconds * BENCHMARK_FPS / elapsed, seconds / elapsed, size, size * 8 / 1000 / seconds);
+                log.info("Encoder benchmark {}p {}s: {}", height, seconds, result);
+                results.add(result);
+            } catch (IOException e) {
+                log.error("Encoder benchmark of profile {} failed: ", entry.getKey(), e);
+                throw new ServiceException("Encoder benchmark failed");
+            } finally {
+                FileUtils.del(output.toFile());
+                deletePassLogs(passLog);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Split the source into chunks of about chunkSeconds without re-encoding.
+     * Stream copy can only cut on keyframes, so every chunk starts with one and
+     * can be transcoded on its own.
+     *
+     * @return chunks in source order
+     */
+    public List<VideoChunk> splitIntoChunks(String inputPath, Long videoFileId, int chunkSeconds) {
+        try {
+            if (ffmpeg == null || ffprobe == null) {
+                init();
+            }
+            String chunkDir = getChunkSourceDir(videoFileId);
+            FileUtils.del(chunkDir);
+            Files.createDirectories(Paths.get(chunkDir));
+            Path chunkList = Paths.get(chunkDir, "chunks.csv");
+
+            FFmpegBuilder builder = new FFmpegBuilder()
+                .setInput(inputPath)
+                .overrideOutputFiles(true)
+                .addOutput(chunkDir + File.separator + "chunk_%03d.mkv")
+                .setFormat("segment")
+                .setVideoCodec("copy")
+                .setAudioCodec("copy")
+                .addExtraArgs("-map", "0:v:0")
+                .addExtraArgs("-map", "0:a:0?")
+                .addExtraArgs("-segment_time", String.valueOf(chunkSeconds))
+                .addExtraArgs("-reset_timestamps", "1")
+                .addExtraArgs("-segment_list", chunkList.toString())
+                .addExtraArgs("-segment_list_type", "csv")
+                .done();
+            runJob(builder, newJob(videoFileId, null, ffprobe.probe(inputPath).getFormat().duration), "split");
+
+            // Each csv line: file name,start time,end time
+            List<VideoChunk> chunks = new ArrayList<>();
+            for (String line : Files.readAllLines(chunkList, StandardCharsets.UTF_8)) {
+                String[] fields = line.split(",");
+                if (fields.length < 3) {
+                    continue;
+                }
+                chunks.add(new VideoChunk(chunks.size(), chunkDir + File.separator + fields[0],
+                    Double.parseDouble(fields[1])));
+            }
+            log.info("Split video file {} into {} chunks", videoFileId, chunks.size());
+            return chunks;
+        } catch (IOException e) {
+            log.error("Failed to split video into chunks: ", e);
+            throw new ServiceException("Video splitting failed");
+        }
+    }
+
+    /**
+     * Transcode one chunk into every rendition, under {outputDir}/chunks/{index}/{height}p/.
+     * Timestamps are shifted to the chunk's position so the stitched stream stays continuous.
+     * Every chunk must use the ladder selected for the whole source, so their renditions line up.
+     */
+    public void convertChunkToHls(String chunkPath, Long videoFileId, int chunkIndex, double chunkStart, int[] ladder) {
+        try {
+            if (ffmpeg == null || ffprobe == null) {
+                init();
+            }
+            String chunkOutputDir = getChunkOutputDir(videoFileId, chunkIndex);
+            // A redelivered chunk starts over
+            FileUtils.del(chunkOutputDir);
+            Files.createDirectories(Paths.get(chunkOutputDir));
+
+            FFmpegProbeResult probeResult = ffprobe.probe(chunkPath);
+            List<Integer> variantIndexes = prepareVariants(chunkOutputDir, probeResult, ladder);
+            transcodeRenditions(chunkPath, chunkOutputDir, variantIndexes, ladder, probeResult, chunkStart,
+                newJob(videoFileId, chunkIndex, probeResult.getFormat().duration), config.isStoryboard());
+        } catch (IOException e) {
+            log.error("Failed to convert video chunk to HLS: ", e);
+            throw new ServiceException("Video chunk transcoding failed");
+        }
+    }
+
+    /**
+     * Concatenate the per-chunk playlists into the final variant playlists and master playlist.
+     * Media files are moved into {outputDir}/{height}p/ and renumbered in playback order
+     * (every segment in mpegts mode, one fMP4 file per chunk in fmp4 mode, each with its own init map),
+     * and so are storyboard sheets, whose WebVTT cues are joined the same way;
+     * chunk sources and intermediate output are removed afterwards.
+     */
+    public VideoTransResult stitchChunks(Long videoFileId, int chunkCount, long duration, int[] ladder) {
+        try {
+            String outputDir = getOutputDir(videoFileId);
+            List<Integer> variantIndexes = new ArrayList<>();
             for (int i = 0; i < config.getVideoResolutions().length; i++) {
                 int targetHeight = config.getVideoResolutions()[i];
+                String variantName = targetHeight + "p";
+                // Every chunk has the same resolution, so the first one decides which renditions exist
+                if (!Files.isDirectory(Paths.get(getChunkOutputDir(videoFileId, 0), variantName))) {
+                    continue;
+                }
+                Path variantDir = Paths.get(outputDir, variantName);
+                Files.createDirectories(variantDir);
 
-                // Skip if target resolution is higher than original
-                if (targetHeight > originalHeight) {
+                List<String> entries = new ArrayList<>();
+                double targetDuration = config.getHlsTime();
+                int sequence = 0;
+                for (int chunk = 0; chunk < chunkCount; chunk++) {
+                    Path chunkVariantDir = Paths.get(getChunkOutputDir(videoFileId, chunk), variantName);
+                    if (chunk > 0) {
+                        // Encoder priming and audio cut points differ slightly at chunk borders
+                        entries.add("#EXT-X-DISCONTINUITY");
+                    }
+                    // A byte-range playlist references the same file many times, so each file is moved once
+                    Map<String, String> renamed = new HashMap<>();
+                    for (String line : Files.readAllLines(chunkVariantDir.resolve("index.m3u8"), StandardCharsets.UTF_8)) {
+                        String trimmed = line.trim();
+                        String uri = trimmed.startsWith("#EXT-X-MAP:") ? StringUtils.substringBetween(trimmed, "URI=\"", "\"")
+                            : StringUtils.isNotEmpty(trimmed) && !trimmed.startsWith("#") ? trimmed : null;
+                        if (uri != null && !renamed.containsKey(uri)) {
+                            String stitchedName = String.format("%s_%03d.%s", FMP4.equals(config.getHlsSegmentType())
+                                ? "media" : "segment", sequence++, FileUtils.extName(uri));
+                            Files.move(chunkVariantDir.resolve(uri), variantDir.resolve(stitchedName),
+                                StandardCopyOption.REPLACE_EXISTING);
+                            renamed.put(uri, stitchedName);
+                        }
+                        if (trimmed.startsWith("#EXTINF:")) {
+                            String seconds = trimmed.substring("#EXTINF:".length()).split(",")[0];
+                            targetDuration = Math.max(targetDuration, Double.parseDouble(seconds));
+                            entries.add(trimmed);
+                        } else if (trimmed.startsWith("#EXT-X-BYTERANGE:")) {
+                            entries.add(trimmed);
+                        } else if (trimmed.startsWith("#EXT-X-MAP:")) {
+                            entries.add(trimmed.replace("URI=\"" + uri + "\"", "URI=\"" + renamed.get(uri) + "\""));
+                        } else if (uri != null) {
+                            entries.add(renamed.get(uri));
+                        }
+                    }
+                }
+
+                List<String> lines = new ArrayList<>();
+                lines.add("#EXTM3U");
+                lines.add("#EXT-X-VERSION:" + playlistVersion());
+                lines.add("#EXT-X-TARGETDURATION:" + (int) Math.ceil(targetDuration));
+                lines.add("#EXT-X-MEDIA-SEQUENCE:0");
+                lines.add("#EXT-X-PLAYLIST-TYPE:VOD");
+                lines.addAll(entries);
+                lines.add("#EXT-X-ENDLIST");
+                Path playlist = variantDir.resolve("index.m3u8");
+                Files.write(playlist, lines, StandardCharsets.UTF_8);
+
+                variantIndexes.add(i);
+            }
+            if (variantIndexes.isEmpty()) {
+                throw new ServiceException("No transcoded chunks found for video file " + videoFileId);
+            }
+
+            stitchStoryboard(outputDir, videoFileId, chunkCount);
+            createMasterPlaylist(outputDir, variantIndexes, ladder);
+            FileUtils.del(outputDir + File.separator + "chunks");
+            FileUtils.del(getChunkSourceDir(videoFileId));
+            return buildResult(outputDir, variantIndexes, ladder, duration);
+        } catch (IOException e) {
+            log.error("Failed to stitch video chunks: ", e);
+            throw new ServiceException("Video stitching failed");
+        }
+    }
+
+    /**
+     * Join the chunk storyboards: sheets are moved and renumbered in playback order, and the cues,
+     * already on the stitched timeline, are pointed at the new names
+     */
+    private void stitchStoryboard(String outputDir, Long videoFileId, int chunkCount) throws IOException {
+        if (!Files.exists(Paths.get(getChunkOutputDir(videoFileId, 0), STORYBOARD_DIR, STORYBOARD_VTT))) {
+            return;
+        }
+        Path storyboardDir = Files.createDirectories(Paths.get(outputDir, STORYBOARD_DIR));
+        List<String> lines = new ArrayList<>(List.of("WEBVTT"));
+        int sheet = 1;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            Path chunkStoryboardDir = Paths.get(getChunkOutputDir(videoFileId, chunk), STORYBOARD_DIR);
+            if (!Files.exists(chunkStoryboardDir.resolve(STORYBOARD_VTT))) {
+                continue;
+            }
+            Map<String, String> renamed = new HashMap<>();
+            List<String> cues = Files.readAllLines(chunkStoryboardDir.resolve(STORYBOARD_VTT), StandardCharsets.UTF_8);
+            // Skip the WEBVTT header, every cue brings its own leading blank line
+            for (String line : cues.subList(1, cues.size())) {
+                int fragment = line.indexOf("#xywh=");
+                if (fragment < 0) {
+                    lines.add(line);
                     continue;
                 }
-                resolutions.add(targetHeight + "p");
-                String variantDir = outputDir + File.separator + targetHeight + "p";
-                Files.createDirectories(Paths.get(variantDir));
+                String sprite = line.substring(0, fragment);
+                String stitchedName = renamed.get(sprite);
+                if (stitchedName == null) {
+                    stitchedName = String.format(SPRITE_PATTERN, sheet++);
+                    Files.move(chunkStoryboardDir.resolve(sprite), storyboardDir.resolve(stitchedName),
+                        StandardCopyOption.REPLACE_EXISTING);
+                    renamed.put(sprite, stitchedName);
+                }
+                lines.add(stitchedName + line.substring(fragment));
+            }
+        }
+        Files.write(storyboardDir.resolve(STORYBOARD_VTT), lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Directory the source chunks of a video file are split into
+     */
+    private String getChunkSourceDir(Long videoFileId) {
+        return config.getTempPath() + File.separator + videoFileId + File.separator + "chunks";
+    }
+
+    /**
+     * Directory the HLS output of one chunk is written to before stitching
+     */
+    private String getChunkOutputDir(Long videoFileId, int chunkIndex) {
+        return getOutputDir(videoFileId) + File.separator + "chunks" + File.separator + chunkIndex;
+    }
+
+    private VideoTransResult buildResult(String outputDir, List<Integer> variantIndexes, int[] ladder, long duration) {
+        List<String> resolutions = new ArrayList<>();
+        List<Integer> bitrates = new ArrayList<>();
+        for (int i : variantIndexes) {
+            resolutions.add(config.getVideoResolutions()[i] + "p");
+            bitrates.add(ladder[i]);
+        }
+        return new VideoTransResult(outputDir, resolutions, duration, bitrates);
+    }
+
+    /**
+     * Pick per-rendition bitrates from a fast CRF encode of a sample at the lowest rendition's height.
+     * The sample bitrate is what that height needs for the CRF quality; higher renditions scale it by
+     * pixel count to the power 0.75, capped at the configured bitrate. Walking up from the lowest rendition,
+     * which is always kept, a rendition is dropped when it costs less than perTitleMinStep times the last
+     * kept one: a higher resolution that does not earn a higher bitrate adds no useful rung, while the
+     * lower rungs keep the ladder bandwidth-adaptive.
+     */
+    private int[] selectLadder(String inputPath, FFmpegProbeResult probeResult, Long videoFileId) throws IOException {
+        int[] ladder = config.getVideoBitrates().clone();
+        if (!config.isPerTitle()) {
+            return ladder;
+        }
+        int originalHeight = probeResult.getStreams().get(0).height;
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < ladder.length; i++) {
+            if (config.getVideoResolutions()[i] <= originalHeight) {
+                candidates.add(i);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return ladder;
+        }
+        candidates.sort(Comparator.comparingInt((Integer i) -> config.getVideoResolutions()[i]).reversed());
+
+        int referenceHeight = config.getVideoResolutions()[candidates.get(candidates.size() - 1)];
+        double sampleKbps = probeComplexity(inputPath, probeResult, referenceHeight, videoFileId);
+        for (int i : candidates) {
+            double scale = Math.pow((double) config.getVideoResolutions()[i] / referenceHeight, 1.5);
+            int needed = (int) Math.round(sampleKbps * scale);
+            ladder[i] = Math.min(config.getVideoBitrates()[i], Math.max(config.getPerTitleMinBitrate(), needed));
+        }
+
+        int lastKept = ladder[candidates.get(candidates.size() - 1)];
+        for (int c = candidates.size() - 2; c >= 0; c--) {
+            int i = candidates.get(c);
+            if (ladder[i] < lastKept * config.getPerTitleMinStep()) {
+                ladder[i] = 0;
+            } else {
+                lastKept = ladder[i];
+            }
+        }
+        log.info("Per-title ladder for {}: sample {} kbps at {}p -> {}", inputPath, Math.round(sampleKbps), referenceHeight,
+            candidates.stream().map(i -> config.getVideoResolutions()[i] + "p:" + ladder[i]).collect(Collectors.joining(",")));
+        return ladder;
+    }
 
-                String variantM3u8 = variantDir + File.separator + "index.m3u8";
-                playlistPaths.add(variantM3u8);
+    /**
+     * Bitrate (kbps) a CRF encode at the given height needs for a sample from the middle of the source.
+     * Run as a job of the video file, so a hung sample encode is seen by the stall detector and killed.
+     */
+    private double probeComplexity(String inputPath, FFmpegProbeResult probeResult, int height, Long videoFileId)
+        throws IOException {
+        double duration = probeResult.getFormat().duration;
+        double sampleSeconds = Math.min(config.getPerTitleSampleSeconds(), duration);
+        long startMillis = Math.round(Math.max(0, (duration - sampleSeconds) / 2) * 1000);
+        Path samplePath = Paths.get(config.getTempPath(), UUID.randomUUID() + "_complexity.mp4");
+        try {
+            FFmpegBuilder builder = new FFmpegBuilder()
+                .setStartOffset(startMillis, TimeUnit.MILLISECONDS)
+                .setInput(inputPath)
+                .overrideOutputFiles(true)
+                .addOutput(samplePath.toString())
+                .setFormat("mp4")
+                .setDuration(Math.round(sampleSeconds * 1000), TimeUnit.MILLISECONDS)
+                .disableAudio()
+                .setVideoCodec("libx264")
+                .setVideoFilter("scale=-2:" + height)
+                .addExtraArgs("-preset", "veryfast")
+                .addExtraArgs("-crf", String.valueOf(config.getPerTitleCrf()))
+                .addExtraArgs("-threads", String.valueOf(config.jobThreads()))
+                .done();
+            runJob(builder, newJob(videoFileId, null, sampleSeconds), "complexity");
+            return Files.size(samplePath) * 8 / 1000.0 / Math.max(sampleSeconds, 1);
+        } finally {
+            Files.deleteIfExists(samplePath);
+        }
+    }
+
+    /**
+     * Indexes of the renditions in the ladder not above the source height, with their output directories created
+     */
+    private List<Integer> prepareVariants(String outputDir, FFmpegProbeResult probeResult, int[] ladder) throws IOException {
+        int originalHeight = probeResult.getStreams().get(0).height;
+        List<Integer> variantIndexes = new ArrayList<>();
+        for (int i = 0; i < config.getVideoResolutions().length; i++) {
+            int targetHeight = config.getVideoResolutions()[i];
+
+            // Skip if target resolution is higher than original, or dropped from the ladder
+            if (targetHeight > originalHeight || ladder[i] <= 0) {
+                continue;
+            }
+            variantIndexes.add(i);
+            Files.createDirectories(Paths.get(outputDir, targetHeight + "p"));
+        }
+        return variantIndexes;
+    }
+
+    /**
+     * Encode the selected renditions in one pass or one job each, as configured
+     *
+     * @param tsOffset   seconds added to output timestamps (0 for a whole source)
+     * @param job        progress record of the job, reported to the progress listener
+     * @param storyboard also write the storyboard, from the single pass or the first rendition's job
+     */
+    private void transcodeRenditions(String inputPath, String outputDir, List<Integer> variantIndexes, int[] ladder,
+                                     FFmpegProbeResult probeResult, double tsOffset, TranscodeProgress job,
+                                     boolean storyboard) throws IOException {
+        if (config.isSinglePass() && !variantIndexes.isEmpty()) {
+            transcodeSinglePass(inputPath, outputDir, variantIndexes, ladder, probeResult, tsOffset, job, storyboard);
+        } else {
+            for (int i : variantIndexes) {
+                transcodeVariant(inputPath, outputDir, i, ladder[i], probeResult, tsOffset, job,
+                    storyboard && i == variantIndexes.get(0));
+            }
+        }
+    }
 
-                FFmpegBuilder builder = new FFmpegBuilder()
+    /**
+     * Transcode one rendition with its own ffmpeg job (decodes the source once per rendition).
+     * With storyboard, the same job writes the sprite sheets as a second output from the decoded source.
+     */
+    private void transcodeVariant(String inputPath, String outputDir, int index, int bitrate, FFmpegProbeResult probeResult,
+                                  double tsOffset, TranscodeProgress job, boolean storyboard) throws IOException {
+        int targetHeight = config.getVideoResolutions()[index];
+        String variantDir = outputDir + File.separator + targetHeight + "p";
+        int targetWidth = calculateWidth(targetHeight, probeResult);
+        String passLog = isTwoPass() ? newPassLog() : null;
+
+        try {
+            if (passLog != null) {
+                FFmpegBuilder firstPass = new FFmpegBuilder()
                     .setInput(inputPath)
                     .overrideOutputFiles(true)
-                    .addOutput(variantM3u8)
-                    .setFormat("hls")
-                    .setVideoCodec("libx264")
-                    .setAudioCodec("aac")
-                    .setVideoResolution(calculateWidth(targetHeight, probeResult), targetHeight)
-                    .setVideoBitRate(config.getVideoBitrates()[i] * 1000L) // Convert kbps to bps
-                    .setStrict(FFmpegBuilder.Strict.EXPERIMENTAL)
-                    .addExtraArgs("-hls_time", String.valueOf(config.getHlsTime()))
-                    .addExtraArgs("-hls_list_size", String.valueOf(config.getHlsListSize()))
-                    .addExtraArgs("-hls_segment_filename", variantDir + File.separator + "segment_%03d.ts")
+                    .addOutput(NULL_OUTPUT)
+                    .setFormat("null")
+                    .disableAudio()
+                    .setVideoResolution(targetWidth, targetHeight)
+                    .addExtraArgs(videoEncoderArgs(0, bitrate, 1, passLog))
+                    .addExtraArgs("-threads", String.valueOf(config.jobThreads()))
                     .done();
+                runJob(firstPass, job, targetHeight + "p pass 1");
+            }
 
-                FFmpegExecutor executor = new FFmpegExecutor(ffmpeg, ffprobe);
-                executor.createJob(builder).run();
+            FFmpegBuilder builder = new FFmpegBuilder()
+                .setInput(inputPath)
+                .overrideOutputFiles(true)
+                .addOutput(variantDir + File.separator + "index.m3u8")
+                .setFormat("hls")
+                .setAudioCodec("aac")
+                .setVideoResolution(targetWidth, targetHeight)
+                .setStrict(FFmpegBuilder.Strict.EXPERIMENTAL)
+                .addExtraArgs(videoEncoderArgs(0, bitrate, passLog != null ? 2 : 0, passLog))
+                .addExtraArgs("-threads", String.valueOf(config.jobThreads()))
+                .addExtraArgs("-hls_time", String.valueOf(config.getHlsTime()))
+                .addExtraArgs("-hls_list_size", String.valueOf(config.getHlsListSize()))
+                .addExtraArgs(segmentArgs(variantDir))
+                .addExtraArgs("-output_ts_offset", String.valueOf(tsOffset))
+                .done();
+            if (storyboard) {
+                addStoryboardOutput(builder, outputDir, "-map", "0:v:0", "-vf", storyboardFilter(probeResult));
             }
 
-            // Create master playlist
-            createMasterPlaylist(outputDir, playlistPaths, config.getVideoResolutions());
-            VideoTransResult videoTransResult = new VideoTransResult(outputDir, resolutions, durations);
-            return videoTransResult;
+            runJob(builder, job, targetHeight + "p");
+            if (storyboard) {
+                writeStoryboardVtt(outputDir, probeResult, tsOffset);
+            }
+        } finally {
+            deletePassLogs(passLog);
+        }
+    }
 
-        } catch (IOException e) {
-            log.error("Failed to convert video to HLS: ", e);
-            throw new ServiceException("Video transcoding failed");
+    /**
+     * Transcode all renditions in a single ffmpeg job: the source is decoded once,
+     * split into scaled copies by a filter graph and muxed per variant via var_stream_map.
+     * Output layout is identical to {@link #transcodeVariant}: {outputDir}/{height}p/index.m3u8
+     * With storyboard, one more branch of the split is tiled into sprite sheets by the final pass.
+     */
+    private void transcodeSinglePass(String inputPath, String outputDir, List<Integer> variantIndexes, int[] ladder,
+                                     FFmpegProbeResult probeResult, double tsOffset, TranscodeProgress job,
+                                     boolean storyboard) throws IOException {
+        int count = variantIndexes.size();
+        boolean hasAudio = hasAudioStream(probeResult);
+
+        String stage = variantIndexes.stream()
+            .map(i -> config.getVideoResolutions()[i] + "p").collect(Collectors.joining(","));
+        String passLog = isTwoPass() ? newPassLog() : null;
+        try {
+            // The first pass only writes x264 stats, one log per rendition
+            if (passLog != null) {
+                FFmpegOutputBuilder firstPass = new FFmpegBuilder()
+                    .setInput(inputPath)
+                    .overrideOutputFiles(true)
+                    .setComplexFilter(splitFilter(variantIndexes, probeResult, false))
+                    .addOutput(NULL_OUTPUT)
+                    .setFormat("null");
+                for (int v = 0; v < count; v++) {
+                    firstPass.addExtraArgs("-map", "[v" + v + "]")
+                        .addExtraArgs(videoEncoderArgs(v, ladder[variantIndexes.get(v)], 1, passLog));
+                }
+                runJob(firstPass.addExtraArgs("-threads", String.valueOf(config.jobThreads())).done(), job,
+                    stage + " pass 1");
+            }
+            FFmpegBuilder builder = singlePassBuilder(inputPath, outputDir, variantIndexes, ladder,
+                splitFilter(variantIndexes, probeResult, storyboard), hasAudio, tsOffset, passLog);
+            if (storyboard) {
+                addStoryboardOutput(builder, outputDir, "-map", "[sb]");
+            }
+            runJob(builder, job, stage);
+            if (storyboard) {
+                writeStoryboardVtt(outputDir, probeResult, tsOffset);
+            }
+        } finally {
+            deletePassLogs(passLog);
+        }
+    }
+
+    /**
+     * [0:v]split=N[s0][s1]...;[s0]scale=w:h[v0];[s1]scale=w:h[v1]...
+     * plus an extra split branch [sN]fps,scale,tile[sb] when the storyboard is written too
+     */
+    private String splitFilter(List<Integer> variantIndexes, FFmpegProbeResult probeResult, boolean storyboard) {
+        int count = variantIndexes.size();
+        int branches = storyboard ? count + 1 : count;
+        StringBuilder filter = new StringBuilder("[0:v]split=").append(branches);
+        for (int v = 0; v < branches; v++) {
+            filter.append("[s").append(v).append(']');
+        }
+        for (int v = 0; v < count; v++) {
+            int targetHeight = config.getVideoResolutions()[variantIndexes.get(v)];
+            filter.append(";[s").append(v).append("]scale=")
+                .append(calculateWidth(targetHeight, probeResult)).append(':').append(targetHeight)
+                .append("[v").append(v).append(']');
+        }
+        if (storyboard) {
+            filter.append(";[s").append(count).append(']').append(storyboardFilter(probeResult)).append("[sb]");
+        }
+        return filter.toString();
+    }
+
+    /**
+     * The HLS encode of {@link #transcodeSinglePass}
+     *
+     * @param passLog x264 stats prefix written by the first pass, or null for a single-pass encode
+     */
+    private FFmpegBuilder singlePassBuilder(String inputPath, String outputDir, List<Integer> variantIndexes, int[] ladder,
+                                            String filter, boolean hasAudio, double tsOffset, String passLog) {
+        int count = variantIndexes.size();
+        FFmpegOutputBuilder output = new FFmpegBuilder()
+            .setInput(inputPath)
+            .overrideOutputFiles(true)
+            .setComplexFilter(filter)
+            .addOutput(outputDir + File.separator + "%v" + File.separator + "index.m3u8")
+            .setFormat("hls")
+            .setStrict(FFmpegBuilder.Strict.EXPERIMENTAL);
+
+        StringBuilder streamMap = new StringBuilder();
+        for (int v = 0; v < count; v++) {
+            int index = variantIndexes.get(v);
+            output.addExtraArgs("-map", "[v" + v + "]")
+                .addExtraArgs(videoEncoderArgs(v, ladder[index], passLog != null ? 2 : 0, passLog));
+            if (hasAudio) {
+                output.addExtraArgs("-map", "0:a:0")
+                    .addExtraArgs("-c:a:" + v, "aac");
+            }
+            if (v > 0) {
+                streamMap.append(' ');
+            }
+            streamMap.append("v:").append(v);
+            if (hasAudio) {
+                streamMap.append(",a:").append(v);
+            }
+            streamMap.append(",name:").append(config.getVideoResolutions()[index]).append('p');
+        }
+
+        return output
+            .addExtraArgs("-threads", String.valueOf(config.jobThreads()))
+            .addExtraArgs("-hls_time", String.valueOf(config.getHlsTime()))
+            .addExtraArgs("-hls_list_size", String.valueOf(config.getHlsListSize()))
+            .addExtraArgs(segmentArgs(outputDir + File.separator + "%v"))
+            .addExtraArgs("-var_stream_map", streamMap.toString())
+            .addExtraArgs("-output_ts_offset", String.valueOf(tsOffset))
+            .done();
+    }
+
+    /**
+     * Filter turning decoded video into storyboard sheets: one frame every interval, scaled to a thumbnail
+     * and tiled columns x rows per image (the last sheet is flushed partly filled)
+     */
+    private String storyboardFilter(FFmpegProbeResult probeResult) {
+        return "fps=1/" + config.getStoryboardInterval()
+            + ",scale=" + config.getStoryboardWidth() + ':' + storyboardHeight(probeResult)
+            + ",tile=" + config.getStoryboardColumns() + 'x' + config.getStoryboardRows();
+    }
+
+    /**
+     * Add the sprite sheet output {outputDir}/storyboard/sprite_NNN.jpg to an encode
+     *
+     * @param args the -map (and per-output filter) selecting the storyboard video
+     */
+    private void addStoryboardOutput(FFmpegBuilder builder, String outputDir, String... args) throws IOException {
+        Path storyboardDir = Paths.get(outputDir, STORYBOARD_DIR);
+        FileUtils.del(storyboardDir.toFile());
+        Files.createDirectories(storyboardDir);
+        builder.addOutput(storyboardDir.resolve(SPRITE_PATTERN).toString())
+            .setFormat("image2")
+            .addExtraArgs(args)
+            .addExtraArgs("-q:v", "5")
+            .done();
+    }
+
+    /**
+     * Write {outputDir}/storyboard/storyboard.vtt: one cue per thumbnail, pointing at its tile in the
+     * sheets with a media fragment (sprite_001.jpg#xywh=x,y,w,h). Cues stop at the last sheet written.
+     *
+     * @param tsOffset seconds added to cue times, so chunk tracks are already on the stitched timeline
+     */
+    private void writeStoryboardVtt(String outputDir, FFmpegProbeResult probeResult, double tsOffset) throws IOException {
+        Path storyboardDir = Paths.get(outputDir, STORYBOARD_DIR);
+        int interval = config.getStoryboardInterval();
+        int columns = config.getStoryboardColumns();
+        int perSheet = columns * config.getStoryboardRows();
+        int width = config.getStoryboardWidth();
+        int height = storyboardHeight(probeResult);
+        double duration = probeResult.getFormat().duration;
+
+        List<String> lines = new ArrayList<>(List.of("WEBVTT"));
+        for (int i = 0; i * interval < duration; i++) {
+            String sprite = String.format(SPRITE_PATTERN, i / perSheet + 1);
+            if (!Files.exists(storyboardDir.resolve(sprite))) {
+                break;
+            }
+            int tile = i % perSheet;
+            lines.add("");
+            lines.add(vttTime(tsOffset + i * interval) + " --> " + vttTime(tsOffset + Math.min((i + 1) * interval, duration)));
+            lines.add(sprite + "#xywh=" + (tile % columns) * width + ',' + (tile / columns) * height + ',' + width + ',' + height);
         }
+        Files.write(storyboardDir.resolve(STORYBOARD_VTT), lines, StandardCharsets.UTF_8);
     }
 
     /**
-     * Create master playlist for HLS adaptive streaming
+     * Thumbnail height for the configured width at the source aspect ratio, even for the encoder
      */
-    private void createMasterPlaylist(String outputDir, List<String> variantPlaylists, int[] resolutions) throws IOException {
+    private int storyboardHeight(FFmpegProbeResult probeResult) {
+        int width = config.getStoryboardWidth();
+        int height;
+        if (probeResult != null) {
+            height = (int) Math.round((double) width * probeResult.getStreams().get(0).height
+                / probeResult.getStreams().get(0).width);
+        } else {
+            height = width * 9 / 16;
+        }
+        return Math.max(2, height / 2 * 2);
+    }
+
+    /**
+     * WebVTT timestamp hh:mm:ss.ttt
+     */
+    private static String vttTime(double seconds) {
+        long millis = Math.round(seconds * 1000);
+        return String.format("%02d:%02d:%02d.%03d", millis / 3600000, millis / 60000 % 60, millis / 1000 % 60,
+            millis % 1000);
+    }
+
+    /**
+     * One pass of the benchmark clip, generated by lavfi, under a given profile
+     */
+    private FFmpegBuilder benchmarkBuilder(String source, String output, String format, FFmpegConfig.EncoderProfile profile,
+                                           int bitrate, int pass, String passLog, int threads) {
+        return new FFmpegBuilder()
+            .setFormat("lavfi")
+            .setInput(source)
+            .overrideOutputFiles(true)
+            .addOutput(output)
+            .setFormat(format)
+            .disableAudio()
+            .addExtraArgs(videoEncoderArgs(profile, 0, bitrate, pass, passLog))
+            .addExtraArgs("-threads", String.valueOf(threads))
+            .done();
+    }
+
+    /**
+     * libx264 options of output video stream v under the node's encoder profile
+     *
+     * @param bitrate target (abr, two-pass) or cap (capped-crf) in kbps
+     * @param pass    1 or 2 for the passes of a two-pass encode, 0 otherwise
+     * @param passLog x264 stats prefix of a two-pass encode; each stream gets its own log under it
+     */
+    private String[] videoEncoderArgs(int v, int bitrate, int pass, String passLog) {
+        return videoEncoderArgs(config.activeProfile(), v, bitrate, pass, passLog);
+    }
+
+    private String[] videoEncoderArgs(FFmpegConfig.EncoderProfile profile, int v, int bitrate, int pass, String passLog) {
+        String stream = ":v:" + v;
+        List<String> args = new ArrayList<>(List.of("-c" + stream, "libx264", "-preset" + stream, profile.getPreset()));
+        if (StringUtils.isNotEmpty(profile.getTune())) {
+            args.addAll(List.of("-tune" + stream, profile.getTune()));
+        }
+        if (profile.getLookahead() > 0) {
+            args.addAll(List.of("-rc-lookahead" + stream, String.valueOf(profile.getLookahead())));
+        }
+        if (CAPPED_CRF.equals(profile.getRateControl())) {
+            args.addAll(List.of("-crf" + stream, String.valueOf(profile.getCrf()),
+                "-maxrate" + stream, bitrate + "k", "-bufsize" + stream, (bitrate * 2) + "k"));
+        } else {
+            args.addAll(List.of("-b" + stream, bitrate + "k"));
+        }
+        if (pass > 0) {
+            args.addAll(List.of("-pass" + stream, String.valueOf(pass), "-passlogfile" + stream, passLog + "_" + v));
+        }
+        return args.toArray(new String[0]);
+    }
+
+    private boolean isTwoPass() {
+        return TWO_PASS.equals(config.activeProfile().getRateControl());
+    }
+
+    /**
+     * A fresh x264 stats prefix under the temp directory
+     */
+    private String newPassLog() {
+        return Paths.get(config.getTempPath(), UUID.randomUUID() + "_pass").toString();
+    }
+
+    /**
+     * Remove the stats files x264 wrote under a prefix (.log, .log.mbtree, ...)
+     */
+    private void deletePassLogs(String passLog) {
+        if (passLog == null) {
+            return;
+        }
+        Path prefix = Paths.get(passLog);
+        File[] logs = prefix.getParent().toFile().listFiles((dir, name) -> name.startsWith(prefix.getFileName().toString()));
+        if (logs != null) {
+            for (File file : logs) {
+                FileUtils.del(file);
+            }
+        }
+    }
+
+    /**
+     * Progress record of a whole-file or chunk job, before it is started
+     *
+     * @param duration seconds of media the job encodes
+     */
+    private TranscodeProgress newJob(Long videoFileId, Integer chunkIndex, double duration) {
+        TranscodeProgress job = new TranscodeProgress();
+        job.setJobId(chunkIndex != null ? videoFileId + ":" + chunkIndex : String.valueOf(videoFileId));
+        job.setVideoFileId(videoFileId);
+        job.setChunkIndex(chunkIndex);
+        job.setDuration(duration);
+        return job;
+    }
+
+    /**
+     * Run an ffmpeg job, reporting its progress to the listener (if any) and keeping its process
+     * killable through {@link #abort} while it runs
+     */
+    private void runJob(FFmpegBuilder builder, TranscodeProgress job, String stage) {
+        TranscodeProgressListener listener = job != null ? progressListener.getIfAvailable() : null;
+        if (listener == null) {
+            new FFmpegExecutor(ffmpeg, ffprobe).createJob(builder).run();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        job.setStage(stage);
+        job.setStatus(TranscodeProgress.RUNNING);
+        job.setOutTime(0);
+        job.setPercent(0);
+        job.setFrame(0);
+        job.setFps(0);
+        job.setSpeed(0);
+        job.setStartTime(now);
+        job.setUpdateTime(now);
+        listener.onProgress(snapshot(job));
+
+        CURRENT_JOB.set(job.getJobId());
+        try {
+            new FFmpegExecutor(ffmpeg, ffprobe).createJob(builder, progress -> {
+                synchronized (job) {
+                    job.setFrame(progress.frame);
+                    job.setFps(progress.fps != null ? progress.fps.doubleValue() : 0);
+                    job.setSpeed(progress.speed);
+                    if (progress.out_time_ns > 0) {
+                        job.setOutTime(progress.out_time_ns / 1e9);
+                    }
+                    job.setPercent(job.getDuration() > 0 ? Math.min(100, job.getOutTime() * 100 / job.getDuration()) : 0);
+                    job.setUpdateTime(System.currentTimeMillis());
+                }
+                listener.onProgress(snapshot(job));
+            }).run();
+            job.setStatus(TranscodeProgress.FINISHED);
+            job.setPercent(100);
+        } catch (RuntimeException e) {
+            job.setStatus(TranscodeProgress.FAILED);
+            throw e;
+        } finally {
+            CURRENT_JOB.remove();
+            runningJobs.remove(job.getJobId());
+            job.setUpdateTime(System.currentTimeMillis());
+            listener.onProgress(snapshot(job));
+        }
+    }
+
+    private static TranscodeProgress snapshot(TranscodeProgress job) {
+        TranscodeProgress copy = new TranscodeProgress();
+        synchronized (job) {
+            BeanUtils.copyProperties(job, copy);
+        }
+        return copy;
+    }
+
+    /**
+     * Kill the ffmpeg process of a running job on this node; the job then fails on the thread running it
+     *
+     * @param jobId video file id, with ":chunkIndex" for a chunk job
+     * @return whether a running process was found
+     */
+    public boolean abort(String jobId) {
+        Process process = runningJobs.get(jobId);
+        if (process == null) {
+            return false;
+        }
+        log.warn("Killing ffmpeg process of transcode job {}", jobId);
+        process.destroyForcibly();
+        return true;
+    }
+
+    /**
+     * Segment muxing options for a variant directory: numbered .ts files, or a single
+     * fragmented MP4 (init and fragments in one file) addressed by EXT-X-BYTERANGE
+     */
+    private String[] segmentArgs(String variantDir) {
+        if (FMP4.equals(config.getHlsSegmentType())) {
+            return new String[]{"-hls_segment_type", FMP4, "-hls_flags", "single_file",
+                "-hls_segment_filename", variantDir + File.separator + "media.mp4"};
+        }
+        return new String[]{"-hls_segment_filename", variantDir + File.separator + "segment_%03d.ts"};
+    }
+
+    /**
+     * EXT-X-MAP in media playlists needs protocol version 6, byte ranges 4
+     */
+    private int playlistVersion() {
+        return FMP4.equals(config.getHlsSegmentType()) ? 7 : 3;
+    }
+
+    /**
+     * Whether the probed source carries at least one audio stream
+     */
+    private boolean hasAudioStream(FFmpegProbeResult probeResult) {
+        return probeResult.getStreams().stream()
+            .anyMatch(stream -> stream.codec_type == FFmpegStream.CodecType.AUDIO);
+    }
+
+    /**
+     * Create master playlist for HLS adaptive streaming.
+     * Every variant is advertised from its produced output: BANDWIDTH is the peak and AVERAGE-BANDWIDTH
+     * the mean bitrate over its segments (audio and container included), RESOLUTION, FRAME-RATE and
+     * CODECS come from probing its first media file. The configured ladder bitrate is only a fallback
+     * for a variant without segments.
+     * Written to a temporary file and moved into place, so readers never see a partial playlist.
+     */
+    private void createMasterPlaylist(String outputDir, List<Integer> variantIndexes, int[] ladder) throws IOException {
+        if (ffmpeg == null || ffprobe == null) {
+            init();
+        }
         Path masterPlaylistPath = Paths.get(outputDir, "master.m3u8");
         List<String> lines = new ArrayList<>();
         lines.add("#EXTM3U");
-        lines.add("#EXT-X-VERSION:3");
+        lines.add("#EXT-X-VERSION:" + playlistVersion());
+
+        for (int i : variantIndexes) {
+            String variantName = config.getVideoResolutions()[i] + "p";
+            Path variantDir = Paths.get(outputDir, variantName);
+            VariantStats stats = measureVariant(variantDir.resolve("index.m3u8"));
+
+            StringBuilder streamInf = new StringBuilder("#EXT-X-STREAM-INF:BANDWIDTH=");
+            if (stats.firstMedia == null) {
+                streamInf.append(ladder[i] * 1000); // Convert to bps
+                streamInf.append(",RESOLUTION=").append(calculateWidth(config.getVideoResolutions()[i], null))
+                    .append('x').append(config.getVideoResolutions()[i]);
+            } else {
+                streamInf.append(stats.peakBandwidth).append(",AVERAGE-BANDWIDTH=").append(stats.averageBandwidth);
+                appendMediaAttributes(streamInf, ffprobe.probe(variantDir.resolve(stats.firstMedia).toString()));
+            }
+            lines.add(streamInf.toString());
+            lines.add(variantName + "/index.m3u8");
+        }
 
-        for (int i = 0; i < variantPlaylists.size(); i++) {
-            String variantPath = variantPlaylists.get(i);
-            int resolution = resolutions[i];
-            int bandwidth = config.getVideoBitrates()[i] * 1000; // Convert to bps
+        Path tempPath = Paths.get(outputDir, "master.m3u8.tmp");
+        Files.write(tempPath, lines);
+        Files.move(tempPath, masterPlaylistPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Peak and average bitrate (bps) of a variant from its playlist: each segment's size is its
+     * byte range, or the size of its file, over its EXTINF duration
+     */
+    private VariantStats measureVariant(Path playlist) throws IOException {
+        VariantStats stats = new VariantStats();
+        if (!Files.isRegularFile(playlist)) {
+            return stats;
+        }
+        double duration = 0;
+        long totalBytes = 0;
+        double segmentDuration = 0;
+        Long byteRange = null;
+        for (String line : Files.readAllLines(playlist, StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("#EXTINF:")) {
+                segmentDuration = Double.parseDouble(trimmed.substring("#EXTINF:".length()).split(",")[0]);
+            } else if (trimmed.startsWith("#EXT-X-BYTERANGE:")) {
+                byteRange = Long.parseLong(trimmed.substring("#EXT-X-BYTERANGE:".length()).split("@")[0]);
+            } else if (StringUtils.isNotEmpty(trimmed) && !trimmed.startsWith("#")) {
+                long bytes = byteRange != null ? byteRange : Files.size(playlist.resolveSibling(trimmed));
+                if (stats.firstMedia == null) {
+                    stats.firstMedia = trimmed;
+                }
+                if (segmentDuration > 0) {
+                    stats.peakBandwidth = Math.max(stats.peakBandwidth, Math.round(bytes * 8 / segmentDuration));
+                }
+                duration += segmentDuration;
+                totalBytes += bytes;
+                segmentDuration = 0;
+                byteRange = null;
+            }
+        }
+        if (duration > 0) {
+            stats.averageBandwidth = Math.round(totalBytes * 8 / duration);
+        }
+        return stats;
+    }
 
-            lines.add("#EXT-X-STREAM-INF:BANDWIDTH=" + bandwidth + ",RESOLUTION=" + calculateWidth(resolution, null) + "x" + resolution);
-            lines.add(resolution + "p/index.m3u8");
+    /**
+     * RESOLUTION, FRAME-RATE and CODECS attributes of a probed variant
+     */
+    private void appendMediaAttributes(StringBuilder streamInf, FFmpegProbeResult probeResult) {
+        List<String> codecs = new ArrayList<>();
+        for (FFmpegStream stream : probeResult.getStreams()) {
+            if (stream.codec_type == FFmpegStream.CodecType.VIDEO) {
+                streamInf.append(",RESOLUTION=").append(stream.width).append('x').append(stream.height);
+                if (stream.avg_frame_rate != null && stream.avg_frame_rate.getNumerator() > 0) {
+                    streamInf.append(",FRAME-RATE=").append(String.format("%.3f", stream.avg_frame_rate.doubleValue()));
+                }
+                codecs.add(avcCodec(stream));
+            } else if (stream.codec_type == FFmpegStream.CodecType.AUDIO) {
+                // AAC-LC, the profile ffmpeg's native aac encoder produces
+                codecs.add("mp4a.40.2");
+            }
         }
+        if (!codecs.isEmpty()) {
+            streamInf.append(",CODECS=\"").append(String.join(",", codecs)).append('"');
+        }
+    }
 
-        Files.write(masterPlaylistPath, lines);
+    /**
+     * RFC 6381 codec string of an H.264 stream: avc1.PPCCLL (profile_idc, constraint flags, level_idc)
+     */
+    private String avcCodec(FFmpegStream stream) {
+        String profile = StringUtils.defaultString(stream.profile);
+        String profileAndConstraints;
+        if (profile.contains("Baseline")) {
+            profileAndConstraints = "42E0";
+        } else if (profile.equals("Main")) {
+            profileAndConstraints = "4D40";
+        } else {
+            profileAndConstraints = "6400";
+        }
+        return "avc1." + profileAndConstraints + String.format("%02X", stream.level > 0 ? stream.level : 40);
     }
 
     /**
@@ -156,4 +1209,13 @@ public class FFmpegUtils {
 
         return width;
     }
+
+    /**
+     * Measured bitrates of one variant, with the first media file it references
+     */
+    private static class VariantStats {
+        private long peakBandwidth;
+        private long averageBandwidth;
+        private String firstMedia;
+    }
 }
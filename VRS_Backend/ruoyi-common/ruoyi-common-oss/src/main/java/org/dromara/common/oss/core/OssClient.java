@@ -21,8 +21,12 @@ import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Configuration;
 import software.amazon.awssdk.services.s3.crt.S3CrtHttpConfiguration;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListPartsResponse;
 import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.model.Part;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
@@ -35,7 +39,12 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * S3 存储协议 所有兼容S3协议的云厂商均支持
@@ -603,6 +612,44 @@ public class OssClient {
         return policy.replaceAll("bucketName", bucketName);
     }
 
+    /**
+     * Upload a single local file using S3TransferManager, keeping the local copy
+     *
+     * @param filePath    Local file path
+     * @param key         Object key in OSS
+     * @param contentType Content type of the object
+     * @return UploadResult containing the object url and eTag
+     * @throws OssException if upload fails
+     */
+    public UploadResult uploadFileTransfer(Path filePath, String key, String contentType) {
+        try {
+            return uploadFileTransferAsync(filePath, key, contentType).join();
+        } catch (Exception e) {
+            throw new OssException("Failed to upload file " + filePath + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Start uploading a single local file using S3TransferManager, keeping the local copy
+     *
+     * @param filePath    Local file path
+     * @param key         Object key in OSS
+     * @param contentType Content type of the object
+     * @return future completed with the object url and eTag
+     */
+    public CompletableFuture<UploadResult> uploadFileTransferAsync(Path filePath, String key, String contentType) {
+        FileUpload fileUpload = transferManager.uploadFile(
+            x -> x.putObjectRequest(
+                    y -> y.bucket(properties.getBucketName())
+                        .key(key)
+                        .contentType(contentType)
+                        .build())
+                .source(filePath).build());
+        return fileUpload.completionFuture().thenApply(uploadResult ->
+            UploadResult.builder().url(getUrl() + StringUtils.SLASH + key).filename(key)
+                .eTag(uploadResult.response().eTag()).build());
+    }
+
     /**
      * Upload a directory using S3TransferManager for efficient parallel transfer
      *
@@ -670,4 +717,135 @@ public class OssClient {
         }
     }
 
+
+    /**
+     * Start a multipart upload the client sends parts of directly to the bucket
+     *
+     * @param key         Object key in OSS
+     * @param contentType Content type of the object
+     * @return OSS multipart upload id
+     */
+    public String createMultipartUpload(String key, String contentType) {
+        try {
+            return client.createMultipartUpload(
+                x -> x.bucket(properties.getBucketName())
+                    .key(key)
+                    .contentType(contentType)
+                    .build())
+                .join().uploadId();
+        } catch (Exception e) {
+            throw new OssException("Failed to create multipart upload " + key + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Presigned URL the client PUTs one part to
+     *
+     * @param partNumber Part number, starting at 1
+     * @param second     Validity of the URL in seconds
+     */
+    public String presignUploadPart(String key, String uploadId, int partNumber, Integer second) {
+        URL url = presigner.presignUploadPart(
+                x -> x.signatureDuration(Duration.ofSeconds(second))
+                    .uploadPartRequest(
+                        y -> y.bucket(properties.getBucketName())
+                            .key(key)
+                            .uploadId(uploadId)
+                            .partNumber(partNumber)
+                            .build())
+                    .build())
+            .url();
+        return url.toString();
+    }
+
+    /**
+     * Parts the bucket has received for a multipart upload
+     *
+     * @return part number to part, ordered by part number
+     */
+    public SortedMap<Integer, Part> listMultipartParts(String key, String uploadId) {
+        try {
+            SortedMap<Integer, Part> parts = new TreeMap<>();
+            Integer marker = null;
+            ListPartsResponse response;
+            do {
+                Integer partNumberMarker = marker;
+                response = client.listParts(
+                    x -> x.bucket(properties.getBucketName())
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumberMarker(partNumberMarker)
+                        .build())
+                    .join();
+                response.parts().forEach(part -> parts.put(part.partNumber(), part));
+                marker = response.nextPartNumberMarker();
+            } while (Boolean.TRUE.equals(response.isTruncated()));
+            return parts;
+        } catch (Exception e) {
+            throw new OssException("Failed to list parts of " + key + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Assemble the received parts into the object
+     *
+     * @return UploadResult containing the object url and eTag
+     */
+    public UploadResult completeMultipartUpload(String key, String uploadId, Collection<Part> parts) {
+        try {
+            List<CompletedPart> completedParts = parts.stream()
+                .map(part -> CompletedPart.builder().partNumber(part.partNumber()).eTag(part.eTag()).build())
+                .toList();
+            CompleteMultipartUploadResponse response = client.completeMultipartUpload(
+                x -> x.bucket(properties.getBucketName())
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(y -> y.parts(completedParts))
+                    .build())
+                .join();
+            return UploadResult.builder().url(getUrl() + StringUtils.SLASH + key).filename(key)
+                .eTag(response.eTag()).build();
+        } catch (Exception e) {
+            throw new OssException("Failed to complete multipart upload " + key + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Discard a multipart upload and the parts received so far
+     */
+    public void abortMultipartUpload(String key, String uploadId) {
+        try {
+            client.abortMultipartUpload(
+                x -> x.bucket(properties.getBucketName())
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build())
+                .join();
+        } catch (Exception e) {
+            throw new OssException("Failed to abort multipart upload " + key + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Size of an object in bytes
+     *
+     * @return the size, or null when the object does not exist
+     */
+    public Long getObjectSize(String key) {
+        try {
+            return client.headObject(
+                x -> x.bucket(properties.getBucketName())
+                    .key(key)
+                    .build())
+                .join().contentLength();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof S3Exception s3Exception && s3Exception.statusCode() == 404) {
+                return null;
+            }
+            throw new OssException("Failed to read metadata of " + key + ": " + e.getMessage());
+        } catch (Exception e) {
+            throw new OssException("Failed to read metadata of " + key + ": " + e.getMessage());
+        }
+    }
+
 }
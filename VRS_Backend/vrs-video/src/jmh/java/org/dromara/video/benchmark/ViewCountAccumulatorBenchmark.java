@@ -0,0 +1,126 @@
+package org.dromara.video.benchmark;
+
+import org.dromara.video.utils.ViewCountAccumulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 播放量累加器基准测试: 无锁分段累加器 vs 原来单锁保护的 HashMap
+ * increment: 8 个线程并发累加; withFlush: 7 个线程累加的同时 1 个线程不断快照清零 (模拟定时刷库)。
+ * videos 为活跃视频数, 1 即全部命中同一个热门视频。
+ * 运行: mvn -P jmh -pl vrs-video -am test-compile exec:exec
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ViewCountAccumulatorBenchmark {
+
+    private static final long FIRST_VIDEO_ID = 1_800_000_000_000_000_000L;
+
+    @State(Scope.Benchmark)
+    public static class Counters {
+
+        @Param({"1", "1000", "100000"})
+        public int videos;
+
+        public ViewCountAccumulator accumulator;
+        public LockedViewCounts locked;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            accumulator = new ViewCountAccumulator();
+            locked = new LockedViewCounts();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Views {
+        private final SplittableRandom random = new SplittableRandom();
+
+        public long next(int videos) {
+            return FIRST_VIDEO_ID + random.nextInt(videos);
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void incrementAccumulator(Counters counters, Views views) {
+        counters.accumulator.add(views.next(counters.videos), 1);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void incrementLockedMap(Counters counters, Views views) {
+        counters.locked.add(views.next(counters.videos), 1);
+    }
+
+    @Benchmark
+    @Group("accumulatorWithFlush")
+    @GroupThreads(7)
+    public void accumulatorAdd(Counters counters, Views views) {
+        counters.accumulator.add(views.next(counters.videos), 1);
+    }
+
+    @Benchmark
+    @Group("accumulatorWithFlush")
+    @GroupThreads(1)
+    public Map<Long, Long> accumulatorFlush(Counters counters) {
+        return counters.accumulator.snapshotAndReset();
+    }
+
+    @Benchmark
+    @Group("lockedMapWithFlush")
+    @GroupThreads(7)
+    public void lockedMapAdd(Counters counters, Views views) {
+        counters.locked.add(views.next(counters.videos), 1);
+    }
+
+    @Benchmark
+    @Group("lockedMapWithFlush")
+    @GroupThreads(1)
+    public Map<Long, Long> lockedMapFlush(Counters counters) {
+        return counters.locked.snapshotAndReset();
+    }
+
+    /**
+     * 原实现: 一个对象锁保护的 HashMap, 刷库时持锁复制后清空
+     */
+    public static class LockedViewCounts {
+        private final Map<Long, Long> counts = new HashMap<>();
+        private final Object lock = new Object();
+
+        public void add(long videoId, long delta) {
+            synchronized (lock) {
+                counts.merge(videoId, delta, Long::sum);
+            }
+        }
+
+        public Map<Long, Long> snapshotAndReset() {
+            synchronized (lock) {
+                Map<Long, Long> snapshot = new HashMap<>(counts);
+                counts.clear();
+                return snapshot;
+            }
+        }
+    }
+}
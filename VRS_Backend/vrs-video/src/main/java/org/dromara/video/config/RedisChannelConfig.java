@@ -14,4 +14,9 @@ public class RedisChannelConfig {
      * Video upload channel
      */
     public static final String VIDEO_UPLOAD_CHANNEL = "video:upload:channel";
+
+    /**
+     * Transcode progress channel, one JSON progress report per message
+     */
+    public static final String VIDEO_TRANSCODE_PROGRESS_CHANNEL = "video:transcode:progress:channel";
 } 
\ No newline at end of file
@@ -20,6 +20,26 @@ public class RedisStreamConfig {
      */
     public static final String CONSUMER_PREFIX = "consumer-";
 
+    /**
+     * Stream key for pending transcode jobs
+     */
+    public static final String TRANSCODE_STREAM = "video:transcode:stream";
+
+    /**
+     * Sorted set of scheduled transcode jobs waiting to enter the stream, scored by fair-share finish tag
+     */
+    public static final String TRANSCODE_SCHEDULE = "video:transcode:schedule";
+
+    /**
+     * Sorted set of backfill re-transcode jobs, entering the stream only when no scheduled job is waiting
+     */
+    public static final String TRANSCODE_BACKFILL = "video:transcode:backfill";
+
+    /**
+     * Consumer group shared by all transcode nodes
+     */
+    public static final String TRANSCODE_GROUP = "video-transcode-group";
+
     /**
      * Event types
      */
@@ -0,0 +1,44 @@
+package org.dromara.video.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Transcode Admission Control Configuration
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "video.admission")
+public class VideoAdmissionConfig {
+
+    /**
+     * Apply admission control to new uploads
+     */
+    private boolean enabled = true;
+
+    /**
+     * Estimated wait in seconds beyond which a new job is deferred instead of queued
+     */
+    private long deferWait = 1800;
+
+    /**
+     * Estimated wait in seconds beyond which new uploads are rejected
+     */
+    private long rejectWait = 14400;
+
+    /**
+     * Transcode queue depth at or beyond which new jobs are deferred
+     */
+    private long maxQueueDepth = 200;
+
+    /**
+     * Free bytes required under the source, temp and output paths to accept uploads
+     */
+    private long minFreeDisk = 10L * 1024 * 1024 * 1024;
+
+    /**
+     * Seconds of video one transcode worker gets through per second, used to turn backlog into wait time
+     */
+    private double speedFactor = 1.0;
+}
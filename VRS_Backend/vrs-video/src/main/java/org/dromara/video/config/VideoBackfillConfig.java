@@ -0,0 +1,24 @@
+package org.dromara.video.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Re-transcode Backfill Configuration
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "video.backfill")
+public class VideoBackfillConfig {
+
+    /**
+     * Max published files queued for re-transcoding per job run
+     */
+    private int batchSize = 20;
+
+    /**
+     * Queue backfill jobs only while fewer than this many transcode jobs are queued or running
+     */
+    private int maxQueueDepth = 10;
+}
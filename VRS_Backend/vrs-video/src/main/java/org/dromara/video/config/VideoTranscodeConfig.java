@@ -0,0 +1,75 @@
+package org.dromara.video.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Video Transcode Worker Configuration
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "video.transcode")
+public class VideoTranscodeConfig {
+
+    /**
+     * Number of concurrent transcode workers (0 derives it from available cores / ffmpeg.threads)
+     */
+    private int workers;
+
+    /**
+     * Max messages taken from the Redis queue ahead of free workers (0 means one per worker)
+     */
+    private int prefetch;
+
+    /**
+     * Seconds to wait for running transcodes to finish on shutdown
+     */
+    private long shutdownTimeout = 300;
+
+    /**
+     * Seconds a transcode lease lives without renewal before other nodes may reclaim the job
+     */
+    private long leaseTimeout = 60;
+
+    /**
+     * Deliveries after which a job that keeps crashing its worker is marked failed
+     */
+    private int maxDeliveries = 3;
+
+    /**
+     * Chunk length in seconds when long sources are split for parallel transcoding across nodes (0 disables splitting)
+     */
+    private int chunkDuration;
+
+    /**
+     * Sources shorter than this many seconds are transcoded whole
+     */
+    private int chunkMinDuration = 600;
+
+    /**
+     * Order queued jobs shortest first with per-user fair share instead of arrival order
+     */
+    private boolean fairScheduling = true;
+
+    /**
+     * Seconds a job can be overtaken by newer jobs before it runs ahead of them (caps the cost of long jobs)
+     */
+    private long agingLimit = 1800;
+
+    /**
+     * Scheduled jobs kept in the stream ahead of the consumers; ordering applies only to jobs not yet in it
+     */
+    private int dispatchWindow = 2;
+
+    /**
+     * Publish a video as soon as its lowest rendition is uploaded, adding higher renditions as they finish.
+     * With single-pass encoding the lowest rendition is encoded on its own first and the rest together after it
+     */
+    private boolean progressivePublish = true;
+
+    /**
+     * Seconds a running ffmpeg job may go without encoding further before it is killed and requeued (0 disables)
+     */
+    private long stallTimeout = 300;
+}
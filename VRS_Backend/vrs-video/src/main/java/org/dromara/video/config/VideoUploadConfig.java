@@ -0,0 +1,69 @@
+package org.dromara.video.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Video Upload (OSS) Configuration
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "video.upload")
+public class VideoUploadConfig {
+
+    /**
+     * Number of upload workers consuming transcode-complete events on this node
+     */
+    private int workers = 2;
+
+    /**
+     * Files of one directory uploaded to OSS at the same time
+     */
+    private int fileConcurrency = 8;
+
+    /**
+     * Seconds a pending upload event stays idle before another worker reclaims and retries it
+     */
+    private long reclaimIdle = 120;
+
+    /**
+     * Attempts after which an upload is marked failed
+     */
+    private int maxDeliveries = 3;
+
+    /**
+     * Upload finished HLS segments to OSS while ffmpeg is still encoding
+     */
+    private boolean streaming = true;
+
+    /**
+     * Milliseconds between scans of an encoding output directory for finished segments
+     */
+    private long streamingInterval = 2000;
+
+    /**
+     * Threads shared by all streaming segment uploads on this node
+     */
+    private int streamingThreads = 4;
+
+    /**
+     * Chunk size in bytes handed to clients of the resumable upload API
+     */
+    private long chunkSize = 8L * 1024 * 1024;
+
+    /**
+     * Largest source file accepted by the resumable upload API, in bytes
+     */
+    private long maxFileSize = 10L * 1024 * 1024 * 1024;
+
+    /**
+     * Hours an unfinished resumable upload is kept before its state expires
+     */
+    private long sessionTimeout = 24;
+
+    /**
+     * Seconds a presigned part URL of a direct-to-OSS upload stays valid
+     */
+    private int presignExpire = 3600;
+}
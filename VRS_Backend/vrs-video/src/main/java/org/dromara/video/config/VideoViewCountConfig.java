@@ -0,0 +1,83 @@
+package org.dromara.video.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * View Count Aggregation Configuration
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "video.view-count")
+public class VideoViewCountConfig {
+
+    /**
+     * Aggregation window in milliseconds, one batched Kafka message is sent per window
+     */
+    private long window = 1000;
+
+    /**
+     * Seconds to wait for a window message to be acknowledged by Kafka
+     */
+    private long sendTimeout = 5;
+
+    /**
+     * Hours a producer watermark is kept by the consumer
+     */
+    private long watermarkTtl = 24;
+
+    /**
+     * Max videos written by one UPDATE when flushing view counts to the database
+     */
+    private int flushChunkSize = 1000;
+
+    /**
+     * Threads recording views off the request thread
+     */
+    private int recordThreads = 2;
+
+    /**
+     * Views waiting to be recorded, further views are dropped while the queue is full
+     */
+    private int recordQueueCapacity = 10000;
+
+    /**
+     * Days of daily unique-viewer HyperLogLogs merged into the unique view count
+     */
+    private int uniqueDays = 7;
+
+    /**
+     * HMAC key signing the cookie that keeps an anonymous viewer's identity across IP changes;
+     * blank disables the cookie and anonymous viewers are told apart by IP and user agent only.
+     * A client that drops the cookie and varies its user agent still counts as a new viewer each time
+     */
+    private String viewerSecret;
+
+    /**
+     * Seconds a locally cached unique view count is served before it is refreshed in the background
+     */
+    private long uniqueCacheTtl = 60;
+
+    /**
+     * Videos whose unique view count is cached locally
+     */
+    private long uniqueCacheSize = 10000;
+
+    /**
+     * Minutes a repeat view from the same viewer is not counted again
+     */
+    private long seenWindow = 30;
+
+    /**
+     * Distinct (video, viewer) pairs one seen window is sized for; the seen filter of each window
+     * is a Bloom filter initialized for this many insertions
+     */
+    private long seenExpectedViews = 1000000;
+
+    /**
+     * False-positive rate of the seen filter while a window stays within seenExpectedViews,
+     * i.e. the share of first views wrongly dropped as repeats; it grows once a window holds more
+     */
+    private double seenFalseProbability = 0.001;
+}
@@ -0,0 +1,39 @@
+package org.dromara.video.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Local Transcode Workspace Configuration
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "video.workspace")
+public class VideoWorkspaceConfig {
+
+    /**
+     * Run the workspace sweeper on this node
+     */
+    private boolean enabled = true;
+
+    /**
+     * Bytes the source, cover, temp and output paths may use together before completed work is evicted
+     */
+    private long quota = 200L * 1024 * 1024 * 1024;
+
+    /**
+     * Milliseconds between workspace sweeps
+     */
+    private long sweepInterval = 600000;
+
+    /**
+     * Hours a file without a live owner stays untouched before it is reclaimed as an orphan
+     */
+    private long orphanAge = 48;
+
+    /**
+     * Hours the files of a failed transcode or upload are kept for retries before they are reclaimed
+     */
+    private long failedRetention = 72;
+}
@@ -2,17 +2,23 @@ package org.dromara.video.consumer;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.dromara.common.redis.utils.RedisUtils;
+import org.dromara.video.config.VideoViewCountConfig;
 import org.dromara.video.domain.message.VideoViewMessage;
 import org.dromara.video.service.impl.VideoViewCountServiceImpl;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
 
-import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 视频播放量消息消费者
+ * 每个生产实例只保留一个水位 (已处理的最大窗口序号), 序号不大于水位的窗口消息视为重复投递
+ * 水位在计数合并成功后才推进: 合并失败的窗口重投时仍会处理, 两步之间宕机时最多重复计入这一个窗口, 不会丢失
  */
 @Slf4j
 @Component
@@ -20,25 +26,43 @@ import java.time.Duration;
 public class VideoViewCountConsumer {
 
     private final VideoViewCountServiceImpl videoViewCountService;
+    private final VideoViewCountConfig videoViewCountConfig;
+    private final StringRedisTemplate redisTemplate;
 
     /**
-     * Redis消息去重key前缀
+     * 生产实例水位key前缀
      */
-    private static final String MESSAGE_DEDUP_KEY = "video:view:msg:";
+    private static final String WATERMARK_KEY = "video:view:watermark:";
+
+    /**
+     * 窗口序号大于水位时推进水位, 不会回退
+     */
+    private static final RedisScript<Long> ADVANCE_WATERMARK_SCRIPT = new DefaultRedisScript<>(
+        "if tonumber(ARGV[1]) <= tonumber(redis.call('get', KEYS[1]) or '0') then return 0 end " +
+        "redis.call('set', KEYS[1], ARGV[1], 'EX', ARGV[2]) " +
+        "return 1",
+        Long.class);
 
     @KafkaListener(topics = "video-view-count", groupId = "video-view-count-group")
     public void consumeViewCount(VideoViewMessage message, Acknowledgment ack) {
         try {
-            String messageKey = MESSAGE_DEDUP_KEY + message.getMessageId();
-            // 使用setObjectIfAbsent设置消息去重标记，有效期24小时
-            Boolean setSuccess = RedisUtils.setObjectIfAbsent(messageKey, "1", Duration.ofHours(24));
-            
-            if (Boolean.TRUE.equals(setSuccess)) {
-                // 只有第一次处理时才更新计数
-                videoViewCountService.consumeViewCount(message, ack);
-                log.debug("处理视频播放量消息：messageId={}", message.getMessageId());
+            if (message.getProducerId() == null || message.getWindowSeq() == null || message.getCounts() == null) {
+                log.warn("忽略格式不正确的播放量消息：{}", message);
+                ack.acknowledge();
+                return;
+            }
+            String watermarkKey = WATERMARK_KEY + message.getProducerId();
+            String watermark = redisTemplate.opsForValue().get(watermarkKey);
+            if (watermark == null || message.getWindowSeq() > Long.parseLong(watermark)) {
+                // 只有第一次处理时才更新计数, 合并成功后再推进水位并确认
+                videoViewCountService.consumeViewCount(message, null);
+                redisTemplate.execute(ADVANCE_WATERMARK_SCRIPT, Collections.singletonList(watermarkKey),
+                    String.valueOf(message.getWindowSeq()),
+                    String.valueOf(TimeUnit.HOURS.toSeconds(videoViewCountConfig.getWatermarkTtl())));
+                ack.acknowledge();
+                log.debug("处理视频播放量消息：producerId={}, windowSeq={}", message.getProducerId(), message.getWindowSeq());
             } else {
-                log.debug("消息已处理，跳过：messageId={}", message.getMessageId());
+                log.debug("消息已处理，跳过：producerId={}, windowSeq={}", message.getProducerId(), message.getWindowSeq());
                 // 消息已处理过，直接确认
                 ack.acknowledge();
             }
@@ -47,4 +71,4 @@ public class VideoViewCountConsumer {
             // 不确认消息，让Kafka进行重试
         }
     }
-} 
\ No newline at end of file
+}
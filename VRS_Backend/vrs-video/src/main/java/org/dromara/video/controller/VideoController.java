@@ -1,21 +1,34 @@
 package org.dromara.video.controller;
 
 import cn.dev33.satoken.annotation.SaCheckLogin;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.common.core.domain.R;
+import org.dromara.common.core.exception.ServiceException;
+import org.dromara.common.ffmpeg.domain.TranscodeProgress;
 import org.dromara.common.mybatis.core.page.PageQuery;
 import org.dromara.common.mybatis.core.page.TableDataInfo;
 import org.dromara.common.satoken.utils.LoginHelper;
+import org.dromara.video.domain.dto.VideoChunkUploadInitDTO;
 import org.dromara.video.domain.dto.VideoUploadDTO;
+import org.dromara.video.domain.vo.VideoAdmissionVO;
 import org.dromara.video.domain.vo.VideoDetailVO;
+import org.dromara.video.domain.vo.VideoUploadSessionVO;
 import org.dromara.video.domain.vo.VideoVO;
+import org.dromara.video.service.ITranscodeProgressService;
+import org.dromara.video.service.IVideoChunkUploadService;
 import org.dromara.video.service.IVideoService;
+import org.dromara.video.service.IVideoViewCountService;
 import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.util.List;
+
 /**
  * Video Controller
  */
@@ -27,22 +40,94 @@ import org.springframework.web.bind.annotation.*;
 public class VideoController {
 
     private final IVideoService videoService;
+    private final IVideoChunkUploadService chunkUploadService;
+    private final ITranscodeProgressService progressService;
+    private final IVideoViewCountService viewCountService;
 
     /**
      * Upload video
      */
     @SaCheckLogin
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public R<Void> upload(@Valid VideoUploadDTO uploadDTO) {
+    public R<VideoAdmissionVO> upload(@Valid VideoUploadDTO uploadDTO) {
         try {
             Long userId = LoginHelper.getUserId();
-            videoService.uploadVideo(uploadDTO, userId);
-            return R.ok();
+            return R.ok(videoService.uploadVideo(uploadDTO, userId));
+        } catch (ServiceException e) {
+            return R.fail(e.getMessage());
         } catch (Exception e) {
             return R.fail("上传视频失败，请重试");
         }
     }
 
+    /**
+     * Start a resumable upload
+     */
+    @SaCheckLogin
+    @PostMapping(value = "/upload/init", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public R<VideoUploadSessionVO> initUpload(@Valid VideoChunkUploadInitDTO initDTO) {
+        return R.ok(chunkUploadService.initUpload(initDTO, LoginHelper.getUserId()));
+    }
+
+    /**
+     * Start a resumable upload whose chunks go straight to OSS
+     */
+    @SaCheckLogin
+    @PostMapping(value = "/upload/direct/init", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public R<VideoUploadSessionVO> initDirectUpload(@Valid VideoChunkUploadInitDTO initDTO) {
+        return R.ok(chunkUploadService.initDirectUpload(initDTO, LoginHelper.getUserId()));
+    }
+
+    /**
+     * Get presigned part URLs of a direct upload, for chunks start to start + count - 1 (at most 100 at a time)
+     */
+    @SaCheckLogin
+    @GetMapping("/upload/{uploadId}/part-urls")
+    public R<List<String>> partUrls(@PathVariable String uploadId,
+                                    @RequestParam(defaultValue = "0") Integer start,
+                                    @RequestParam(defaultValue = "100") Integer count) {
+        return R.ok(chunkUploadService.presignChunkUrls(uploadId, start, count, LoginHelper.getUserId()));
+    }
+
+    /**
+     * Upload one chunk as the raw request body, with its hex SHA-256 in the X-Chunk-Sha256 header
+     */
+    @SaCheckLogin
+    @PutMapping(value = "/upload/{uploadId}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public R<Void> uploadChunk(@PathVariable String uploadId, @PathVariable Integer index,
+                               @RequestHeader("X-Chunk-Sha256") String checksum,
+                               HttpServletRequest request) throws IOException {
+        chunkUploadService.uploadChunk(uploadId, index, request.getInputStream(), checksum, LoginHelper.getUserId());
+        return R.ok();
+    }
+
+    /**
+     * Get resumable upload status, including the chunks already received
+     */
+    @SaCheckLogin
+    @GetMapping("/upload/{uploadId}")
+    public R<VideoUploadSessionVO> uploadStatus(@PathVariable String uploadId) {
+        return R.ok(chunkUploadService.getUploadStatus(uploadId, LoginHelper.getUserId()));
+    }
+
+    /**
+     * Complete a resumable upload and send the video to transcoding
+     */
+    @SaCheckLogin
+    @PostMapping("/upload/{uploadId}/complete")
+    public R<VideoAdmissionVO> completeUpload(@PathVariable String uploadId) {
+        return R.ok(chunkUploadService.completeUpload(uploadId, LoginHelper.getUserId()));
+    }
+
+    /**
+     * Get transcode progress of an uploaded video (also published on the transcode progress channel)
+     */
+    @SaCheckLogin
+    @GetMapping("/{id}/progress")
+    public R<List<TranscodeProgress>> progress(@PathVariable Long id) {
+        return R.ok(progressService.getProgress(id, LoginHelper.getUserId()));
+    }
+
     /**
      * Get video list with pagination
      */
@@ -55,7 +140,7 @@ public class VideoController {
      * Get video detail by ID
      */
     @GetMapping("/{id}")
-    public R<VideoDetailVO> getInfo(@PathVariable Long id) {
-        return R.ok(videoService.getVideoDetail(id));
+    public R<VideoDetailVO> getInfo(@PathVariable Long id, HttpServletRequest request, HttpServletResponse response) {
+        return R.ok(videoService.getVideoDetail(id, viewCountService.resolveViewer(request, response)));
     }
 }
@@ -88,6 +88,11 @@ public class VideoDetailBO {
      */
     private String thumbnailUrl;
 
+    /**
+     * Storyboard WebVTT track URL for seek previews, cues point into sprite sheets beside it
+     */
+    private String storyboardUrl;
+
     /**
      * Convert to VideoDetailVO with resolution splitting
      */
@@ -105,6 +110,7 @@ public class VideoDetailBO {
         vo.setCreateTime(this.createTime);
         vo.setPlaybackUrl(this.playbackUrl);
         vo.setThumbnailUrl(this.thumbnailUrl);
+        vo.setStoryboardUrl(this.storyboardUrl);
 
         // Split resolutions if not empty
         if (this.availableResolutions != null && !this.availableResolutions.isEmpty()) {
@@ -0,0 +1,85 @@
+package org.dromara.video.domain.bo;
+
+import lombok.Data;
+
+/**
+ * Resumable upload session, kept in Redis so any instance can accept the next chunk
+ */
+@Data
+public class VideoUploadSessionBO {
+
+    /**
+     * Upload ID
+     */
+    private String uploadId;
+
+    /**
+     * Video ID the upload will be published as
+     */
+    private Long videoId;
+
+    /**
+     * User ID
+     */
+    private Long userId;
+
+    /**
+     * Original file name
+     */
+    private String fileName;
+
+    /**
+     * File size in bytes
+     */
+    private Long fileSize;
+
+    /**
+     * Chunk size in bytes (the last chunk may be shorter)
+     */
+    private Long chunkSize;
+
+    /**
+     * Number of chunks
+     */
+    private Integer totalChunks;
+
+    /**
+     * Local file the chunks are written into
+     */
+    private String partPath;
+
+    /**
+     * Object key the source is uploaded to, set for direct-to-OSS uploads only
+     */
+    private String objectKey;
+
+    /**
+     * OSS multipart upload id, set for direct-to-OSS uploads only
+     */
+    private String ossUploadId;
+
+    /**
+     * Local thumbnail path
+     */
+    private String thumbnailPath;
+
+    /**
+     * Video title
+     */
+    private String title;
+
+    /**
+     * Video description
+     */
+    private String description;
+
+    /**
+     * Category ID
+     */
+    private Long categoryId;
+
+    /**
+     * Comma separated tags
+     */
+    private String tags;
+}
@@ -59,11 +59,31 @@ public class SysVideoFile {
      */
     private Integer bitrate;
 
+    /**
+     * Bitrate ladder the video was encoded with, e.g. 1080p:1850,720p:1020 (Kbps)
+     */
+    private String bitrateLadder;
+
+    /**
+     * Storyboard WebVTT thumbnail track URL, for seek previews (null when none was generated)
+     */
+    private String storyboardUrl;
+
     /**
      * Duration in seconds
      */
     private Long duration;
 
+    /**
+     * Local path or OSS object key of the uploaded source, kept once the output is published so it can be re-transcoded
+     */
+    private String sourcePath;
+
+    /**
+     * SHA-256 of the uploaded source file (hex), used to find re-uploads of the same bytes
+     */
+    private String contentHash;
+
     /**
      * Storage type (0:local 1:AWS)
      */
@@ -0,0 +1,19 @@
+package org.dromara.video.domain.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Transcode Admission Decision Enum
+ */
+@Getter
+@AllArgsConstructor
+public enum TranscodeAdmission {
+
+    ACCEPTED("已进入转码队列"),
+    DEFERRED("转码繁忙，已延后排队"),
+    REJECTED("转码繁忙，暂不接收"),
+    DUPLICATE("与已发布视频相同，无需转码");
+
+    private final String info;
+}
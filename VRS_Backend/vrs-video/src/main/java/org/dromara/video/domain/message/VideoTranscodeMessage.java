@@ -1,5 +1,6 @@
 package org.dromara.video.domain.message;
 
+import com.alibaba.fastjson.annotation.JSONField;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -29,6 +30,11 @@ public class VideoTranscodeMessage {
      */
     private String sourceFilePath;
 
+    /**
+     * Object key of a source uploaded straight to OSS; downloaded before transcoding when set
+     */
+    private String sourceObjectKey;
+
     /**
      * User ID
      */
@@ -38,4 +44,51 @@ public class VideoTranscodeMessage {
      * Original file name
      */
     private String fileName;
+
+    /**
+     * Time the message was put on the transcode queue (epoch millis)
+     */
+    private Long enqueueTime;
+
+    /**
+     * Chunk index when this is one chunk of a split source, null for a whole-file job
+     */
+    private Integer chunkIndex;
+
+    /**
+     * Number of chunks the source was split into (chunk jobs only)
+     */
+    private Integer chunkCount;
+
+    /**
+     * Start time of the chunk in the source, in seconds (chunk jobs only)
+     */
+    private Double chunkStart;
+
+    /**
+     * Bitrate ladder selected for the whole source, kbps per configured resolution (chunk jobs only)
+     */
+    private int[] bitrateLadder;
+
+    /**
+     * Source duration in seconds, probed when the job is queued
+     */
+    private Long duration;
+
+    /**
+     * Times the job was killed for stalling and put back on the queue
+     */
+    private Integer stalls;
+
+    /**
+     * Set when a published file is re-transcoded by the backfill job: the output is uploaded under its own
+     * revision prefix and replaces the live playlist only once complete (null for a new upload)
+     */
+    private Long backfillRevision;
+
+    /**
+     * Stream record id this message was delivered with (set by the consumer, not serialized)
+     */
+    @JSONField(serialize = false)
+    private String recordId;
 }
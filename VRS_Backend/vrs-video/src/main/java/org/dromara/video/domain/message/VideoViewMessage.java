@@ -4,8 +4,10 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 
+import java.util.Map;
+
 /**
- * 视频播放量消息
+ * 视频播放量消息 - 一个生产实例在一个聚合窗口内的全部播放量增量
  */
 @Data
 @NoArgsConstructor
@@ -13,22 +15,17 @@ import lombok.AllArgsConstructor;
 public class VideoViewMessage {
 
     /**
-     * 消息ID
+     * 生产实例ID (每次启动生成)
      */
-    private String messageId;
+    private String producerId;
 
     /**
-     * 视频ID
+     * 窗口序号, 同一实例内从 1 开始递增, 消费端据此去重
      */
-    private Long videoId;
+    private Long windowSeq;
 
     /**
-     * 增加的播放量
+     * 视频ID -> 增加的播放量
      */
-    private Long increment;
-
-    public VideoViewMessage(Long videoId, Long increment) {
-        this.videoId = videoId;
-        this.increment = increment;
-    }
+    private Map<Long, Long> counts;
 }
@@ -0,0 +1,29 @@
+package org.dromara.video.domain.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Upload result view object: how the new video was admitted to transcoding
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VideoAdmissionVO {
+
+    /**
+     * Video ID
+     */
+    private Long videoId;
+
+    /**
+     * Admission decision (ACCEPTED / DEFERRED / DUPLICATE)
+     */
+    private String admission;
+
+    /**
+     * Estimated seconds until the transcode starts
+     */
+    private Long estimatedWait;
+}
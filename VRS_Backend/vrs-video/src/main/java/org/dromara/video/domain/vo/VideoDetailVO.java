@@ -45,6 +45,11 @@ public class VideoDetailVO {
      */
     private Long viewCount;
 
+    /**
+     * Estimated unique viewers over the last video.view-count.unique-days days (HyperLogLog)
+     */
+    private Long uniqueViewCount;
+
     /**
      * Like count
      */
@@ -80,6 +85,11 @@ public class VideoDetailVO {
      */
     private String thumbnailUrl;
 
+    /**
+     * Storyboard WebVTT track URL for seek previews, cues point into sprite sheets beside it
+     */
+    private String storyboardUrl;
+
     /**
      * Available resolutions
      */
@@ -0,0 +1,47 @@
+package org.dromara.video.domain.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Resumable upload session view object
+ */
+@Data
+public class VideoUploadSessionVO {
+
+    /**
+     * Upload ID
+     */
+    private String uploadId;
+
+    /**
+     * Video ID the upload will be published as
+     */
+    private Long videoId;
+
+    /**
+     * Whether chunks go straight to OSS through presigned URLs instead of to this service
+     */
+    private Boolean direct;
+
+    /**
+     * File size in bytes
+     */
+    private Long fileSize;
+
+    /**
+     * Chunk size in bytes (the last chunk may be shorter)
+     */
+    private Long chunkSize;
+
+    /**
+     * Number of chunks
+     */
+    private Integer totalChunks;
+
+    /**
+     * Indexes of the chunks already received, ascending
+     */
+    private List<Integer> uploadedChunks;
+}
@@ -0,0 +1,32 @@
+package org.dromara.video.job;
+
+import com.aizuda.snailjob.client.job.core.annotation.JobExecutor;
+import com.aizuda.snailjob.client.job.core.dto.JobArgs;
+import com.aizuda.snailjob.client.model.ExecuteResult;
+import com.aizuda.snailjob.common.log.SnailJobLog;
+import lombok.RequiredArgsConstructor;
+import org.dromara.video.service.IVideoBackfillService;
+import org.springframework.stereotype.Component;
+
+/**
+ * Re-transcode backfill job
+ * Schedule it in SnailJob at a fixed interval (blocking strategy: discard) after the ffmpeg settings change;
+ * every run queues the next batch of published videos. Run it once with the parameter "restart" to begin a new pass.
+ */
+@RequiredArgsConstructor
+@Component
+@JobExecutor(name = "videoBackfillJobExecutor")
+public class VideoBackfillJobExecutor {
+
+    private static final String RESTART = "restart";
+
+    private final IVideoBackfillService backfillService;
+
+    public ExecuteResult jobExecute(JobArgs jobArgs) {
+        boolean restart = jobArgs.getJobParams() != null && RESTART.equals(String.valueOf(jobArgs.getJobParams()).trim());
+        int queued = backfillService.queueNextBatch(restart);
+        long checkpoint = backfillService.getCheckpoint();
+        SnailJobLog.REMOTE.info("videoBackfillJobExecutor queued {} video files, checkpoint {}", queued, checkpoint);
+        return ExecuteResult.success("queued " + queued + ", checkpoint " + checkpoint);
+    }
+}
@@ -67,8 +67,8 @@ public interface SysVideoMapper extends BaseMapperPlus<SysVideo, SysVideo> {
     Long selectViewCountById(@Param("videoId") Long videoId);
 
     /**
-     * Batch increment view counts
-     * @param viewCounts Map of video IDs to increment values
+     * Batch increment view counts in a single UPDATE
+     * @param viewCounts Map of video IDs to increment values, pass a sorted chunk so nodes lock rows in the same order
      * @return number of rows affected
      */
     int batchIncrementViewCounts(@Param("viewCounts") Map<Long, Long> viewCounts);
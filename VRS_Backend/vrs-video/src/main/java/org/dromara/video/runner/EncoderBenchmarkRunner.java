@@ -0,0 +1,68 @@
+package org.dromara.video.runner;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.common.ffmpeg.config.FFmpegConfig;
+import org.dromara.common.ffmpeg.domain.EncoderBenchmark;
+import org.dromara.common.ffmpeg.utils.FFmpegUtils;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Encoder benchmark command
+ * Started with --encoder-benchmark, the service encodes a synthetic testsrc clip under every encoder profile
+ * (ffmpeg.profiles) on this machine, logs fps and output size, and exits before the transcode consumer starts.
+ * Optional: --encoder-benchmark-height=1080 --encoder-benchmark-seconds=20
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class EncoderBenchmarkRunner implements ApplicationRunner {
+
+    private static final String BENCHMARK_OPTION = "encoder-benchmark";
+
+    private final FFmpegUtils fFmpegUtils;
+    private final FFmpegConfig ffmpegConfig;
+    private final ApplicationContext applicationContext;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(BENCHMARK_OPTION)) {
+            return;
+        }
+        int height = intOption(args, BENCHMARK_OPTION + "-height", 1080);
+        int seconds = intOption(args, BENCHMARK_OPTION + "-seconds", 20);
+        log.info("Running encoder benchmark at {}p for {}s, node profile is {}", height, seconds, ffmpegConfig.getProfile());
+
+        int exitCode = 0;
+        try {
+            List<EncoderBenchmark> results = fFmpegUtils.benchmark(height, seconds);
+            StringBuilder table = new StringBuilder(String.format("%n%-12s %-10s %-11s %7s %8s %7s %10s %9s",
+                "profile", "preset", "rate", "threads", "fps", "speed", "size", "kbps"));
+            for (EncoderBenchmark result : results) {
+                table.append(String.format("%n%-12s %-10s %-11s %7d %8.1f %6.2fx %10d %9d", result.getProfile(),
+                    result.getPreset(), result.getRateControl(), result.getThreads(), result.getFps(),
+                    result.getSpeed(), result.getSize(), result.getBitrate()));
+            }
+            log.info("Encoder benchmark results:{}", table);
+        } catch (Exception e) {
+            log.error("Encoder benchmark failed: ", e);
+            exitCode = 1;
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(applicationContext, () -> code));
+    }
+
+    private static int intOption(ApplicationArguments args, String name, int defaultValue) {
+        List<String> values = args.getOptionValues(name);
+        return values == null || values.isEmpty() ? defaultValue : Integer.parseInt(values.get(0));
+    }
+}
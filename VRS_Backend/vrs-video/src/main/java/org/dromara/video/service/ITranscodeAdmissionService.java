@@ -0,0 +1,49 @@
+package org.dromara.video.service;
+
+import org.dromara.video.domain.enums.TranscodeAdmission;
+import org.dromara.video.domain.message.VideoTranscodeMessage;
+
+/**
+ * Transcode admission control service
+ * Tracks queued transcode work and decides whether new uploads are queued, deferred or rejected
+ */
+public interface ITranscodeAdmissionService {
+
+    /**
+     * Reject new uploads while the pipeline is saturated, before any bytes are accepted
+     */
+    void checkAdmission();
+
+    /**
+     * Decide how a probed job enters the pipeline and account for its work; throws when rejected.
+     * Inside a transaction the work is dropped again if it rolls back.
+     *
+     * @param duration source duration in seconds
+     */
+    TranscodeAdmission admit(Long videoFileId, long duration);
+
+    /**
+     * Park a deferred job until the queue drains; inside a transaction, once it commits
+     */
+    void defer(VideoTranscodeMessage message);
+
+    /**
+     * Take the oldest deferred job once there is room for it, or null
+     */
+    VideoTranscodeMessage pollDeferred();
+
+    /**
+     * Drop a finished or failed job from the backlog
+     */
+    void release(Long videoFileId);
+
+    /**
+     * Estimated seconds before a job admitted now would start
+     */
+    long estimateWait();
+
+    /**
+     * Report the number of transcode workers on this node, counted into cluster capacity
+     */
+    void reportWorkers(int workers);
+}
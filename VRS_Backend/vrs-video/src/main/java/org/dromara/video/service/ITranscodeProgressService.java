@@ -0,0 +1,24 @@
+package org.dromara.video.service;
+
+import org.dromara.common.ffmpeg.domain.TranscodeProgress;
+
+import java.util.List;
+
+/**
+ * Transcode progress service
+ * Publishes ffmpeg progress to metrics and Redis, and kills jobs that stop making progress
+ */
+public interface ITranscodeProgressService {
+
+    /**
+     * Latest progress of each transcode job of a video, for its owner
+     */
+    List<TranscodeProgress> getProgress(Long videoId, Long userId);
+
+    /**
+     * Whether the job was killed by the stall detector, clearing the mark
+     *
+     * @param chunkIndex chunk index, or null for a whole-file job
+     */
+    boolean clearStalled(Long videoFileId, Integer chunkIndex);
+}
@@ -0,0 +1,22 @@
+package org.dromara.video.service;
+
+/**
+ * Re-transcode backfill service
+ * Pages through published video files by id and puts them through the transcode pipeline again,
+ * e.g. after a rendition, codec or segment length was changed in the ffmpeg settings
+ */
+public interface IVideoBackfillService {
+
+    /**
+     * Queue the published files after the checkpoint, as many as the batch size and the transcode backlog allow
+     *
+     * @param restart start a new pass from the lowest id instead of resuming from the checkpoint
+     * @return number of files queued
+     */
+    int queueNextBatch(boolean restart);
+
+    /**
+     * Id of the last published file the current pass has handled, 0 before it started
+     */
+    long getCheckpoint();
+}
@@ -0,0 +1,49 @@
+package org.dromara.video.service;
+
+import org.dromara.video.domain.dto.VideoChunkUploadInitDTO;
+import org.dromara.video.domain.vo.VideoAdmissionVO;
+import org.dromara.video.domain.vo.VideoUploadSessionVO;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Resumable chunked video upload service interface
+ */
+public interface IVideoChunkUploadService {
+
+    /**
+     * Start an upload session
+     */
+    VideoUploadSessionVO initUpload(VideoChunkUploadInitDTO initDTO, Long userId);
+
+    /**
+     * Start an upload session whose chunks the client sends straight to OSS as multipart parts
+     */
+    VideoUploadSessionVO initDirectUpload(VideoChunkUploadInitDTO initDTO, Long userId);
+
+    /**
+     * Presigned part URLs of a direct-to-OSS session, for chunks start to start + count - 1
+     */
+    List<String> presignChunkUrls(String uploadId, int start, int count, Long userId);
+
+    /**
+     * Write one chunk at its offset, verified against its SHA-256
+     *
+     * @param data     chunk bytes, read as a stream
+     * @param checksum hex SHA-256 of the chunk
+     */
+    void uploadChunk(String uploadId, int index, InputStream data, String checksum, Long userId);
+
+    /**
+     * Session state, including the chunks already received
+     */
+    VideoUploadSessionVO getUploadStatus(String uploadId, Long userId);
+
+    /**
+     * Finish a session whose chunks have all arrived and hand the video to transcoding
+     *
+     * @return video ID and how it was admitted to transcoding
+     */
+    VideoAdmissionVO completeUpload(String uploadId, Long userId);
+}
@@ -0,0 +1,36 @@
+package org.dromara.video.service;
+
+import java.util.Set;
+
+/**
+ * Streaming HLS segment upload service
+ * Ships finished segments to OSS while the transcode is still running
+ */
+public interface IVideoSegmentUploadService {
+
+    /**
+     * Start watching the HLS output directory of a video file and upload each finished segment
+     */
+    void startStreaming(Long videoFileId, String outputDir, String targetDirectory);
+
+    /**
+     * Stop watching and upload the segments that finished since the last scan.
+     * Playlists are left to the upload stage so they only go out once everything they reference is stored.
+     */
+    void stopStreaming(Long videoFileId);
+
+    /**
+     * Object keys already uploaded for a video file
+     */
+    Set<String> getUploadedKeys(Long videoFileId);
+
+    /**
+     * Record an object key as uploaded for a video file
+     */
+    void markUploaded(Long videoFileId, String objectKey);
+
+    /**
+     * Drop the uploaded-key manifest of a video file
+     */
+    void clearUploadedKeys(Long videoFileId);
+}
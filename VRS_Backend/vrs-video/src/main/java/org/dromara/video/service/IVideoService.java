@@ -3,8 +3,12 @@ package org.dromara.video.service;
 import org.dromara.common.mybatis.core.page.PageQuery;
 import org.dromara.common.mybatis.core.page.TableDataInfo;
 import org.dromara.video.domain.dto.VideoUploadDTO;
+import org.dromara.video.domain.entity.SysVideo;
+import org.dromara.video.domain.entity.SysVideoFile;
+import org.dromara.video.domain.vo.VideoAdmissionVO;
 import org.dromara.video.domain.vo.VideoDetailVO;
 import org.dromara.video.domain.vo.VideoVO;
+import org.springframework.web.multipart.MultipartFile;
 
 /**
  * Video service interface
@@ -12,9 +16,38 @@ import org.dromara.video.domain.vo.VideoVO;
 public interface IVideoService {
 
     /**
-     * Upload video
+     * Upload video, returning how it was admitted to transcoding
      */
-    void uploadVideo(VideoUploadDTO uploadDTO, Long userId);
+    VideoAdmissionVO uploadVideo(VideoUploadDTO uploadDTO, Long userId);
+
+    /**
+     * Duration in whole seconds of a saved source file, local or in OSS; throws when it cannot be read
+     * within the ffprobe timeout. Call it before {@link #registerVideo}, outside any transaction
+     */
+    long probeDuration(SysVideoFile videoFile);
+
+    /**
+     * Insert a new video with its saved source file, then reuse an identical published file or queue it for transcoding.
+     * Throws when transcode admission rejects it
+     *
+     * @param duration source duration in seconds, from {@link #probeDuration}
+     */
+    VideoAdmissionVO registerVideo(SysVideo video, SysVideoFile videoFile, long duration);
+
+    /**
+     * Validate and save a thumbnail, returning its local path
+     */
+    String saveThumbnail(MultipartFile thumbnailFile, Long videoId);
+
+    /**
+     * Local path a new source file of a video is stored at
+     */
+    String newSourcePath(Long videoId, String originalFilename);
+
+    /**
+     * Reject source files whose extension is not an accepted video format
+     */
+    void validateVideoType(String fileName);
 
     /**
      * Get video list with pagination
@@ -22,7 +55,9 @@ public interface IVideoService {
     TableDataInfo<VideoVO> queryPageList(PageQuery pageQuery);
 
     /**
-     * Get video detail by ID
+     * Get video detail by ID and record a view
+     *
+     * @param viewerId user id or device fingerprint of the viewer, null when unknown
      */
-    VideoDetailVO getVideoDetail(Long id);
+    VideoDetailVO getVideoDetail(Long id, String viewerId);
 } 
\ No newline at end of file
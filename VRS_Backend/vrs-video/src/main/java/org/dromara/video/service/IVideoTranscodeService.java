@@ -2,19 +2,48 @@ package org.dromara.video.service;
 
 import org.dromara.video.domain.message.VideoTranscodeMessage;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Video transcode service interface
  */
 public interface IVideoTranscodeService {
 
     /**
-     * Send video to transcode queue
+     * Send video to transcode queue, ordered by duration and per-user fair share
      */
     void sendToTranscode(VideoTranscodeMessage message);
 
     /**
-     * Handle transcode messages from queue
-     * This method runs in a loop and should be called by a single consumer
+     * Queue a re-transcode of a published file behind every scheduled job, so it only takes idle workers
+     */
+    void sendToBackfill(VideoTranscodeMessage message);
+
+    /**
+     * Transcode jobs queued or running: scheduled, in the backfill lane, or in the stream
+     */
+    long queueDepth();
+
+    /**
+     * Take the next message from the transcode queue
+     *
+     * @return the message, or null if none arrived within the timeout
+     */
+    VideoTranscodeMessage pollTranscodeMessage(long timeout, TimeUnit unit);
+
+    /**
+     * Transcode a single message taken from the queue, holding a renewable lease on it
+     * until it is finished so no other node picks it up
+     */
+    void handleTranscodeMessage(VideoTranscodeMessage message);
+
+    /**
+     * Keep a message that was taken but not started yet from going idle, so no node reclaims it while it waits
+     */
+    void keepAlive(VideoTranscodeMessage message);
+
+    /**
+     * Return a message that was taken but never started to the queue
      */
-    void handleTranscodeMessage();
+    void requeueTranscodeMessage(VideoTranscodeMessage message);
 } 
\ No newline at end of file
@@ -1,11 +1,46 @@
 package org.dromara.video.service;
 
+import org.dromara.video.domain.entity.SysVideoFile;
 import org.dromara.video.domain.message.VideoUploadMessage;
 
+import java.io.IOException;
+
 /**
  * Video Upload Service Interface
  */
 public interface IVideoUploadService {
 
     void handleUploadMessage();
+
+    /**
+     * Upload a local thumbnail to OSS (the local file is removed)
+     *
+     * @param thumbnailPath local thumbnail path
+     * @return thumbnail URL
+     */
+    String uploadThumbnail(String thumbnailPath);
+
+    /**
+     * Publish a rendition of a video whose higher renditions are still encoding: upload it, the master
+     * playlist listing the renditions finished so far and the thumbnail, then mark the video published.
+     * Called again for each rendition that finishes; the full upload later replaces the master playlist.
+     *
+     * @param resolution directory name of the rendition, e.g. 480p
+     * @return whether the video was published
+     */
+    boolean publishRendition(Long videoId, Long videoFileId, String sourceDirectory, String targetDirectory,
+                             String resolution) throws IOException;
+
+    /**
+     * A published file with the same content hash, other than the given one
+     *
+     * @return the published file, or null
+     */
+    SysVideoFile findPublishedDuplicate(String contentHash, Long videoFileId);
+
+    /**
+     * Publish a video file on the HLS output of an identical published file, skipping transcode and upload.
+     * Only the thumbnail is uploaded, as it belongs to the video.
+     */
+    void publishDuplicate(Long videoId, Long videoFileId, SysVideoFile duplicate);
 }
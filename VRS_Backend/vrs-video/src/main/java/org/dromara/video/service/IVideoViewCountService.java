@@ -1,5 +1,8 @@
 package org.dromara.video.service;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
 /**
  * 视频播放量统计服务
  */
@@ -12,4 +15,31 @@ public interface IVideoViewCountService {
      */
     void increaseViewCount(Long videoId);
 
+    /**
+     * 异步记录一次播放, 立即返回, 不抛出异常
+     * 计数由后台线程完成, 队列满或计数失败时丢弃本次播放;
+     * 指定观众时计入当天的独立观众, 且同一观众在判重窗口内的重复播放不计入播放量
+     *
+     * @param videoId  视频ID
+     * @param viewerId 观众标识 (用户ID或设备指纹), 为空时只计播放量
+     */
+    void recordView(Long videoId, String viewerId);
+
+    /**
+     * 识别观众: 登录用户为用户ID, 匿名观众为客户端 IP 与 UA 的指纹
+     * 配置了签名密钥时, 匿名观众首次访问的指纹以 HMAC 签名 Cookie 下发, IP 变化后仍识别为同一观众
+     *
+     * @return 观众标识, 作为 {@link #recordView} 的 viewerId
+     */
+    String resolveViewer(HttpServletRequest request, HttpServletResponse response);
+
+    /**
+     * 获取最近若干天的独立观众数 (HyperLogLog 估算), 只读本地缓存, 不访问 Redis
+     * 缓存值超过有效期后仍会返回, 同时在后台刷新
+     *
+     * @param videoId 视频ID
+     * @return 独立观众数, 尚未缓存 (已交给后台加载) 或 Redis 不可用时为 null
+     */
+    Long getUniqueViewCount(Long videoId);
+
 }
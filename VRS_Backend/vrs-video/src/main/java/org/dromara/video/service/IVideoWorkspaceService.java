@@ -0,0 +1,23 @@
+package org.dromara.video.service;
+
+/**
+ * Local transcode workspace service
+ * Tracks the files each video file leaves on local disk, reclaims orphans and keeps usage under quota
+ */
+public interface IVideoWorkspaceService {
+
+    /**
+     * Record a local source or thumbnail as belonging to a video file
+     */
+    void track(Long videoFileId, String path);
+
+    /**
+     * Mark a tracked file as just used, so quota eviction takes it last
+     */
+    void touch(String path);
+
+    /**
+     * Reclaim orphaned and expired files, then evict completed work until usage is under quota
+     */
+    void sweep();
+}
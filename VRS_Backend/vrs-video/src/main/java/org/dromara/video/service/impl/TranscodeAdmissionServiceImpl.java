@@ -0,0 +1,257 @@
+package org.dromara.video.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.common.core.exception.ServiceException;
+import org.dromara.common.core.utils.StringUtils;
+import org.dromara.common.ffmpeg.config.FFmpegConfig;
+import org.dromara.video.config.RedisStreamConfig;
+import org.dromara.video.config.VideoAdmissionConfig;
+import org.dromara.video.config.VideoStorageConfig;
+import org.dromara.video.domain.enums.TranscodeAdmission;
+import org.dromara.video.domain.message.VideoTranscodeMessage;
+import org.dromara.video.service.ITranscodeAdmissionService;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Transcode Admission Control Service Implementation
+ * The backlog is the probed duration of every job that is queued or running, kept per video file
+ * in Redis so every node sees the same numbers. Divided by the cluster's transcode capacity
+ * (workers reported by live nodes times the speed factor) it gives the expected wait.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class TranscodeAdmissionServiceImpl implements ITranscodeAdmissionService {
+
+    private final StringRedisTemplate redisTemplate;
+    private final VideoAdmissionConfig admissionConfig;
+    private final FFmpegConfig ffmpegConfig;
+    private final VideoStorageConfig storageConfig;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Video file ID -> source seconds, for jobs in the transcode stream or running
+     */
+    private static final String BACKLOG_KEY = "video:transcode:backlog";
+    /**
+     * Video file ID -> source seconds, for deferred jobs
+     */
+    private static final String DEFERRED_BACKLOG_KEY = "video:transcode:backlog:deferred";
+    /**
+     * Deferred transcode messages, scored by deferral time
+     */
+    private static final String DEFERRED_KEY = "video:transcode:deferred";
+    /**
+     * Node ID -> "workers:heartbeat millis" of nodes running transcode workers
+     */
+    private static final String NODES_KEY = "video:transcode:nodes";
+    private static final long NODE_TIMEOUT_MILLIS = 30000;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private volatile int localWorkers;
+
+    @PostConstruct
+    public void init() {
+        meterRegistry.gauge("video.transcode.backlog.seconds", this, service -> service.sumBacklog(BACKLOG_KEY));
+        meterRegistry.gauge("video.transcode.deferred.size", this, service -> service.deferredCount());
+        meterRegistry.gauge("video.transcode.estimated.wait", this, service -> service.estimateWait());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        redisTemplate.opsForHash().delete(NODES_KEY, nodeId);
+    }
+
+    @Override
+    public void checkAdmission() {
+        if (!admissionConfig.isEnabled()) {
+            return;
+        }
+        checkFreeDisk();
+        long wait = estimateWait();
+        if (wait >= admissionConfig.getRejectWait()) {
+            log.warn("Rejecting upload, estimated transcode wait {}s", wait);
+            throw new ServiceException("转码队列繁忙，预计等待" + (wait / 60) + "分钟，请稍后再试");
+        }
+    }
+
+    @Override
+    public TranscodeAdmission admit(Long videoFileId, long duration) {
+        if (!admissionConfig.isEnabled()) {
+            redisTemplate.opsForHash().put(BACKLOG_KEY, videoFileId.toString(), String.valueOf(duration));
+            releaseOnRollback(videoFileId);
+            return TranscodeAdmission.ACCEPTED;
+        }
+        checkFreeDisk();
+        long wait = estimateWait();
+        if (wait >= admissionConfig.getRejectWait()) {
+            log.warn("Rejecting video file {} ({}s), estimated transcode wait {}s", videoFileId, duration, wait);
+            throw new ServiceException("转码队列繁忙，预计等待" + (wait / 60) + "分钟，请稍后再试");
+        }
+        if (wait >= admissionConfig.getDeferWait() || queueDepth() >= admissionConfig.getMaxQueueDepth()) {
+            redisTemplate.opsForHash().put(DEFERRED_BACKLOG_KEY, videoFileId.toString(), String.valueOf(duration));
+            releaseOnRollback(videoFileId);
+            log.info("Deferring video file {} ({}s), estimated transcode wait {}s", videoFileId, duration, wait);
+            return TranscodeAdmission.DEFERRED;
+        }
+        redisTemplate.opsForHash().put(BACKLOG_KEY, videoFileId.toString(), String.valueOf(duration));
+        releaseOnRollback(videoFileId);
+        return TranscodeAdmission.ACCEPTED;
+    }
+
+    @Override
+    public void defer(VideoTranscodeMessage message) {
+        String messageJson = JSON.toJSONString(message);
+        // Parked only once the video rows exist, a rolled back registration leaves nothing to release
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    redisTemplate.opsForZSet().add(DEFERRED_KEY, messageJson, System.currentTimeMillis());
+                }
+            });
+            return;
+        }
+        redisTemplate.opsForZSet().add(DEFERRED_KEY, messageJson, System.currentTimeMillis());
+    }
+
+    @Override
+    public VideoTranscodeMessage pollDeferred() {
+        if (deferredCount() == 0) {
+            return null;
+        }
+        // Release only while the admitted work alone is below the deferral thresholds
+        if (queueDepth() >= admissionConfig.getMaxQueueDepth()
+            || sumBacklog(BACKLOG_KEY) / capacity() >= admissionConfig.getDeferWait()) {
+            return null;
+        }
+        ZSetOperations.TypedTuple<String> oldest = redisTemplate.opsForZSet().popMin(DEFERRED_KEY);
+        if (oldest == null || oldest.getValue() == null) {
+            return null;
+        }
+        VideoTranscodeMessage message = JSON.parseObject(oldest.getValue(), VideoTranscodeMessage.class);
+        String videoFileId = message.getVideoFileId().toString();
+        Object duration = redisTemplate.opsForHash().get(DEFERRED_BACKLOG_KEY, videoFileId);
+        redisTemplate.opsForHash().put(BACKLOG_KEY, videoFileId, duration != null ? duration.toString() : "0");
+        redisTemplate.opsForHash().delete(DEFERRED_BACKLOG_KEY, videoFileId);
+        return message;
+    }
+
+    @Override
+    public void release(Long videoFileId) {
+        redisTemplate.opsForHash().delete(BACKLOG_KEY, videoFileId.toString());
+        redisTemplate.opsForHash().delete(DEFERRED_BACKLOG_KEY, videoFileId.toString());
+    }
+
+    @Override
+    public long estimateWait() {
+        double backlog = sumBacklog(BACKLOG_KEY) + sumBacklog(DEFERRED_BACKLOG_KEY);
+        return Math.round(backlog / capacity());
+    }
+
+    @Override
+    public void reportWorkers(int workers) {
+        localWorkers = workers;
+        heartbeat();
+    }
+
+    /**
+     * Keep this node counted in the cluster capacity
+     */
+    @Scheduled(fixedRate = 10000)
+    public void heartbeat() {
+        if (localWorkers > 0) {
+            redisTemplate.opsForHash().put(NODES_KEY, nodeId, localWorkers + ":" + System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * The backlog entry is written at once so concurrent uploads see it, and dropped again
+     * if the registration it belongs to rolls back
+     */
+    private void releaseOnRollback(Long videoFileId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    release(videoFileId);
+                }
+            }
+        });
+    }
+
+    /**
+     * Seconds of video the cluster transcodes per second
+     */
+    private double capacity() {
+        long now = System.currentTimeMillis();
+        int workers = 0;
+        Map<Object, Object> nodes = redisTemplate.opsForHash().entries(NODES_KEY);
+        for (Map.Entry<Object, Object> node : nodes.entrySet()) {
+            String[] value = node.getValue().toString().split(":");
+            if (now - Long.parseLong(value[1]) > NODE_TIMEOUT_MILLIS) {
+                redisTemplate.opsForHash().delete(NODES_KEY, node.getKey());
+                continue;
+            }
+            workers += Integer.parseInt(value[0]);
+        }
+        return Math.max(1, workers) * admissionConfig.getSpeedFactor();
+    }
+
+    private long sumBacklog(String key) {
+        List<Object> values = redisTemplate.opsForHash().values(key);
+        return values.stream().mapToLong(value -> Long.parseLong(value.toString())).sum();
+    }
+
+    private long deferredCount() {
+        Long size = redisTemplate.opsForZSet().size(DEFERRED_KEY);
+        return size != null ? size : 0;
+    }
+
+    private long queueDepth() {
+        Long size = redisTemplate.opsForStream().size(RedisStreamConfig.TRANSCODE_STREAM);
+        Long scheduled = redisTemplate.opsForZSet().size(RedisStreamConfig.TRANSCODE_SCHEDULE);
+        return (size != null ? size : 0) + (scheduled != null ? scheduled : 0);
+    }
+
+    /**
+     * Sources, chunks and HLS output all land on local disk; stop taking work before it fills up
+     */
+    private void checkFreeDisk() {
+        // The paths may coincide or be unset
+        Set<String> paths = new LinkedHashSet<>();
+        for (String path : Arrays.asList(storageConfig.getVideoPath(), ffmpegConfig.getTempPath(), ffmpegConfig.getOutputPath())) {
+            if (StringUtils.isNotBlank(path)) {
+                paths.add(path);
+            }
+        }
+        for (String path : paths) {
+            File dir = new File(path);
+            if (dir.exists() && dir.getUsableSpace() < admissionConfig.getMinFreeDisk()) {
+                log.warn("Rejecting upload, only {} bytes free under {}", dir.getUsableSpace(), path);
+                throw new ServiceException("服务器存储空间不足，请稍后再试");
+            }
+        }
+    }
+}
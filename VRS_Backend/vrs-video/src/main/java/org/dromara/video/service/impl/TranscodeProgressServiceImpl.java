@@ -0,0 +1,198 @@
+package org.dromara.video.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.common.core.exception.ServiceException;
+import org.dromara.common.ffmpeg.domain.TranscodeProgress;
+import org.dromara.common.ffmpeg.progress.TranscodeProgressListener;
+import org.dromara.common.ffmpeg.utils.FFmpegUtils;
+import org.dromara.video.config.RedisChannelConfig;
+import org.dromara.video.config.VideoTranscodeConfig;
+import org.dromara.video.domain.entity.SysVideo;
+import org.dromara.video.domain.entity.SysVideoFile;
+import org.dromara.video.mapper.SysVideoFileMapper;
+import org.dromara.video.mapper.SysVideoMapper;
+import org.dromara.video.service.ITranscodeProgressService;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transcode Progress Service Implementation
+ * Running jobs of this node are summed into gauges (per-job values stay in Redis to keep metric tags bounded).
+ * The latest report of each job is kept in a Redis hash per video file and published on a channel,
+ * at most every couple of seconds per job. A job whose encoded position stops advancing for the stall
+ * timeout has its ffmpeg process killed; the transcode service then puts it back on the queue.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class TranscodeProgressServiceImpl implements ITranscodeProgressService, TranscodeProgressListener {
+
+    private final StringRedisTemplate redisTemplate;
+    private final VideoTranscodeConfig transcodeConfig;
+    private final FFmpegUtils fFmpegUtils;
+    private final SysVideoMapper videoMapper;
+    private final SysVideoFileMapper videoFileMapper;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Hash of job ("file" or "chunk:index") -> latest progress JSON, per video file
+     */
+    private static final String PROGRESS_KEY = "video:transcode:progress:";
+    private static final Duration PROGRESS_TTL = Duration.ofDays(1);
+    private static final Duration FINISHED_TTL = Duration.ofHours(1);
+    private static final long WRITE_INTERVAL_MILLIS = 2000;
+
+    /**
+     * Jobs running on this node by job id
+     */
+    private final Map<String, JobState> running = new ConcurrentHashMap<>();
+    /**
+     * Jobs killed by the stall detector, until the transcode service picks up the failure
+     */
+    private final Set<String> stalled = ConcurrentHashMap.newKeySet();
+
+    private DistributionSummary jobSpeed;
+    private Counter stalls;
+
+    @PostConstruct
+    public void init() {
+        meterRegistry.gauge("video.transcode.jobs.active", running, Map::size);
+        meterRegistry.gauge("video.transcode.fps", running,
+            jobs -> jobs.values().stream().mapToDouble(state -> state.progress.getFps()).sum());
+        meterRegistry.gauge("video.transcode.speed", running,
+            jobs -> jobs.values().stream().mapToDouble(state -> state.progress.getSpeed()).sum());
+        meterRegistry.gauge("video.transcode.percent", running,
+            jobs -> jobs.values().stream().mapToDouble(state -> state.progress.getPercent()).average().orElse(0));
+        jobSpeed = DistributionSummary.builder("video.transcode.job.speed")
+            .description("Seconds of media encoded per second of a finished job")
+            .register(meterRegistry);
+        stalls = meterRegistry.counter("video.transcode.stalled");
+    }
+
+    @Override
+    public void onProgress(TranscodeProgress progress) {
+        String jobId = progress.getJobId();
+        long now = System.currentTimeMillis();
+        if (TranscodeProgress.RUNNING.equals(progress.getStatus())) {
+            JobState state = running.computeIfAbsent(jobId, id -> new JobState(progress, now));
+            if (progress.getOutTime() > state.progress.getOutTime() || progress.getFrame() > state.progress.getFrame()
+                || !Objects.equals(progress.getStage(), state.progress.getStage())) {
+                state.advancedAt = now;
+            }
+            state.progress = progress;
+            if (now - state.writtenAt >= WRITE_INTERVAL_MILLIS) {
+                state.writtenAt = now;
+                save(progress, PROGRESS_TTL);
+            }
+            return;
+        }
+
+        running.remove(jobId);
+        if (stalled.contains(jobId)) {
+            progress.setStatus(TranscodeProgress.STALLED);
+        } else if (TranscodeProgress.FINISHED.equals(progress.getStatus())) {
+            long elapsed = progress.getUpdateTime() - progress.getStartTime();
+            if (elapsed > 0) {
+                jobSpeed.record(progress.getDuration() * 1000 / elapsed);
+            }
+        }
+        save(progress, FINISHED_TTL);
+    }
+
+    @Override
+    public List<TranscodeProgress> getProgress(Long videoId, Long userId) {
+        SysVideo video = videoMapper.selectById(videoId);
+        if (video == null || !Objects.equals(video.getUserId(), userId)) {
+            throw new ServiceException("视频不存在");
+        }
+        List<TranscodeProgress> progress = new ArrayList<>();
+        List<SysVideoFile> files = videoFileMapper.selectList(new LambdaQueryWrapper<SysVideoFile>()
+            .select(SysVideoFile::getId)
+            .eq(SysVideoFile::getVideoId, videoId));
+        for (SysVideoFile file : files) {
+            for (Object json : redisTemplate.opsForHash().values(PROGRESS_KEY + file.getId())) {
+                progress.add(JSON.parseObject(json.toString(), TranscodeProgress.class));
+            }
+        }
+        progress.sort(Comparator.comparing(TranscodeProgress::getJobId));
+        return progress;
+    }
+
+    @Override
+    public boolean clearStalled(Long videoFileId, Integer chunkIndex) {
+        return stalled.remove(chunkIndex != null ? videoFileId + ":" + chunkIndex : String.valueOf(videoFileId));
+    }
+
+    /**
+     * Kill jobs whose encoded position has not moved for the stall timeout
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void detectStalls() {
+        long timeout = transcodeConfig.getStallTimeout() * 1000;
+        if (timeout <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, JobState> job : running.entrySet()) {
+            JobState state = job.getValue();
+            if (now - state.advancedAt < timeout || stalled.contains(job.getKey())) {
+                continue;
+            }
+            log.warn("Transcode job {} ({}) made no progress for {}s at {}s of {}s, killing it", job.getKey(),
+                state.progress.getStage(), (now - state.advancedAt) / 1000,
+                Math.round(state.progress.getOutTime()), Math.round(state.progress.getDuration()));
+            stalled.add(job.getKey());
+            if (fFmpegUtils.abort(job.getKey())) {
+                stalls.increment();
+            } else {
+                // Already gone: nothing to kill, so nothing will report the failure either
+                stalled.remove(job.getKey());
+                running.remove(job.getKey());
+            }
+        }
+    }
+
+    private void save(TranscodeProgress progress, Duration ttl) {
+        String key = PROGRESS_KEY + progress.getVideoFileId();
+        String json = JSON.toJSONString(progress);
+        try {
+            redisTemplate.opsForHash().put(key,
+                progress.getChunkIndex() != null ? "chunk:" + progress.getChunkIndex() : "file", json);
+            redisTemplate.expire(key, ttl);
+            redisTemplate.convertAndSend(RedisChannelConfig.VIDEO_TRANSCODE_PROGRESS_CHANNEL, json);
+        } catch (Exception e) {
+            log.warn("Failed to save progress of transcode job {}: {}", progress.getJobId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Latest report of a running job and when its encoded position last moved
+     */
+    private static class JobState {
+        private volatile TranscodeProgress progress;
+        private volatile long advancedAt;
+        private volatile long writtenAt;
+
+        private JobState(TranscodeProgress progress, long now) {
+            this.progress = progress;
+            this.advancedAt = now;
+        }
+    }
+}
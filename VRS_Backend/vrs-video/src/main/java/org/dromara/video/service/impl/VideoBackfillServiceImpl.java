@@ -0,0 +1,117 @@
+package org.dromara.video.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.common.core.utils.StringUtils;
+import org.dromara.video.config.VideoBackfillConfig;
+import org.dromara.video.domain.entity.SysVideoFile;
+import org.dromara.video.domain.enums.VideoStatus;
+import org.dromara.video.domain.message.VideoTranscodeMessage;
+import org.dromara.video.mapper.SysVideoFileMapper;
+import org.dromara.video.service.IVideoBackfillService;
+import org.dromara.video.service.IVideoTranscodeService;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Re-transcode Backfill Service Implementation
+ * Each run queues at most batch-size files, and none while the transcode backlog is at max-queue-depth,
+ * so the rate follows how fast the cluster drains its queue. Queued files wait in the backfill lane,
+ * which enters the transcode stream only when no new upload is scheduled. The checkpoint is the last
+ * file id handled and is stored in Redis after every file, so an interrupted pass resumes where it stopped.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class VideoBackfillServiceImpl implements IVideoBackfillService {
+
+    private final SysVideoFileMapper videoFileMapper;
+    private final IVideoTranscodeService transcodeService;
+    private final StringRedisTemplate redisTemplate;
+    private final VideoBackfillConfig backfillConfig;
+
+    private static final String CHECKPOINT_KEY = "video:backfill:checkpoint";
+
+    @Override
+    public int queueNextBatch(boolean restart) {
+        if (restart) {
+            redisTemplate.delete(CHECKPOINT_KEY);
+            log.info("Starting a new backfill pass from the first published video file");
+        }
+        long depth = transcodeService.queueDepth();
+        long budget = Math.min(backfillConfig.getBatchSize(), backfillConfig.getMaxQueueDepth() - depth);
+        if (budget <= 0) {
+            log.info("Backfill waits, {} transcode jobs are queued or running", depth);
+            return 0;
+        }
+
+        long checkpoint = getCheckpoint();
+        int queued = 0;
+        int skipped = 0;
+        while (queued < budget) {
+            List<SysVideoFile> files = videoFileMapper.selectList(new LambdaQueryWrapper<SysVideoFile>()
+                .eq(SysVideoFile::getStatus, VideoStatus.PUBLISHED.getCode())
+                .eq(SysVideoFile::getFileType, "hls")
+                .gt(SysVideoFile::getId, checkpoint)
+                .orderByAsc(SysVideoFile::getId)
+                .last("limit " + (budget - queued)));
+            if (files.isEmpty()) {
+                log.info("Backfill pass is complete, last video file {}", checkpoint);
+                break;
+            }
+            for (SysVideoFile file : files) {
+                VideoTranscodeMessage message = toMessage(file);
+                if (message != null) {
+                    transcodeService.sendToBackfill(message);
+                    queued++;
+                } else {
+                    log.warn("Backfill skips video file {}, its source {} is no longer available", file.getId(),
+                        file.getSourcePath());
+                    skipped++;
+                }
+                checkpoint = file.getId();
+                redisTemplate.opsForValue().set(CHECKPOINT_KEY, String.valueOf(checkpoint));
+            }
+        }
+        log.info("Backfill queued {} video files, skipped {}, checkpoint {}", queued, skipped, checkpoint);
+        return queued;
+    }
+
+    @Override
+    public long getCheckpoint() {
+        String checkpoint = redisTemplate.opsForValue().get(CHECKPOINT_KEY);
+        return StringUtils.isNumeric(checkpoint) ? Long.parseLong(checkpoint) : 0;
+    }
+
+    /**
+     * Transcode message re-reading the file's original source, or null when the source is gone
+     * (files published before sources were recorded, duplicates sharing another file's output,
+     * and local sources already evicted from the workspace)
+     */
+    private VideoTranscodeMessage toMessage(SysVideoFile file) {
+        String source = file.getSourcePath();
+        if (StringUtils.isEmpty(source)) {
+            return null;
+        }
+        boolean inObjectStorage = Objects.equals(file.getStorageType(), 1);
+        if (!inObjectStorage && !Files.isRegularFile(Paths.get(source))) {
+            return null;
+        }
+        return VideoTranscodeMessage.builder()
+            .videoId(file.getVideoId())
+            .videoFileId(file.getId())
+            .sourceFilePath(inObjectStorage ? null : source)
+            .sourceObjectKey(inObjectStorage ? source : null)
+            .userId(file.getUserId())
+            .fileName(file.getFileName())
+            .duration(file.getDuration())
+            .backfillRevision(System.currentTimeMillis())
+            .build();
+    }
+}
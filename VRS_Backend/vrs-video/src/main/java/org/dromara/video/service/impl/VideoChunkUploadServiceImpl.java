@@ -0,0 +1,445 @@
+package org.dromara.video.service.impl;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.alibaba.fastjson.JSON;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.common.core.exception.ServiceException;
+import org.dromara.common.core.utils.StringUtils;
+import org.dromara.common.oss.core.OssClient;
+import org.dromara.common.oss.factory.OssFactory;
+import org.dromara.video.config.VideoStorageConfig;
+import org.dromara.video.config.VideoUploadConfig;
+import org.dromara.video.domain.bo.VideoUploadSessionBO;
+import org.dromara.video.domain.dto.VideoChunkUploadInitDTO;
+import org.dromara.video.domain.entity.SysVideo;
+import org.dromara.video.domain.entity.SysVideoFile;
+import org.dromara.video.domain.enums.VideoStatus;
+import org.dromara.video.domain.vo.VideoAdmissionVO;
+import org.dromara.video.domain.vo.VideoUploadSessionVO;
+import org.dromara.video.mapper.SysVideoMapper;
+import org.dromara.video.service.ITranscodeAdmissionService;
+import org.dromara.video.service.IVideoChunkUploadService;
+import org.dromara.video.service.IVideoService;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.s3.model.Part;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resumable Chunked Video Upload Service Implementation
+ * Chunks are written at their offset in a part file through a FileChannel,
+ * straight from the request stream, so neither the servlet layer nor the heap holds a whole chunk.
+ * Session state lives in Redis; the part file must be on storage shared by the instances
+ * (as the video path already is for the transcode nodes).
+ * Direct sessions skip this service for the bytes: the client PUTs each chunk to a presigned
+ * OSS multipart part URL and the bucket tracks which parts arrived. Their multipart uploads are
+ * aborted on the workspace sweep interval once the session has expired, so abandoned parts are not kept;
+ * an object that was assembled but never registered as a video is deleted by the same sweep.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class VideoChunkUploadServiceImpl implements IVideoChunkUploadService {
+
+    private final IVideoService videoService;
+    private final StringRedisTemplate redisTemplate;
+    private final VideoStorageConfig storageConfig;
+    private final VideoUploadConfig uploadConfig;
+    private final ITranscodeAdmissionService admissionService;
+    private final SysVideoMapper videoMapper;
+
+    private static final String SESSION_KEY = "video:upload:session:";
+    /**
+     * Redis set of received chunk indexes, per session
+     */
+    private static final String CHUNKS_KEY = "video:upload:session:chunks:";
+    /**
+     * Held while a session is being completed, so it is published once
+     */
+    private static final String COMPLETE_LOCK_KEY = "video:upload:session:complete:";
+    /**
+     * Upload ID -> session JSON of direct sessions not registered as a video yet
+     */
+    private static final String DIRECT_SESSIONS_KEY = "video:upload:direct";
+    /**
+     * OSS prefix of sources uploaded directly by clients
+     */
+    private static final String SOURCE_PREFIX = "sources/";
+    private static final int MAX_MULTIPART_PARTS = 10000;
+    private static final int MAX_PRESIGN_BATCH = 100;
+
+    @Override
+    public VideoUploadSessionVO initUpload(VideoChunkUploadInitDTO initDTO, Long userId) {
+        VideoUploadSessionBO session = newSession(initDTO, userId);
+        session.setPartPath(storageConfig.getTempPath() + File.separator + session.getUploadId() + ".part");
+        try {
+            Path partPath = Paths.get(session.getPartPath());
+            Files.createDirectories(partPath.getParent());
+            Files.deleteIfExists(partPath);
+            Files.createFile(partPath);
+        } catch (IOException e) {
+            log.error("Error creating upload part file: ", e);
+            throw new ServiceException("创建上传任务失败");
+        }
+
+        saveSession(session);
+        log.info("Started resumable upload {} for user {}: {} bytes in {} chunks",
+            session.getUploadId(), userId, session.getFileSize(), session.getTotalChunks());
+        return toVO(session, Collections.emptyList());
+    }
+
+    @Override
+    public VideoUploadSessionVO initDirectUpload(VideoChunkUploadInitDTO initDTO, Long userId) {
+        VideoUploadSessionBO session = newSession(initDTO, userId);
+        if (session.getTotalChunks() > MAX_MULTIPART_PARTS) {
+            throw new ServiceException("分片数量超过" + MAX_MULTIPART_PARTS + "，请调大分片大小");
+        }
+        session.setObjectKey(SOURCE_PREFIX + session.getVideoId() + "." + FileUtil.extName(session.getFileName()));
+        session.setOssUploadId(OssFactory.instance().createMultipartUpload(session.getObjectKey(),
+            VideoSegmentUploadServiceImpl.getContentType(session.getFileName())));
+
+        saveSession(session);
+        redisTemplate.opsForHash().put(DIRECT_SESSIONS_KEY, session.getUploadId(), JSON.toJSONString(session));
+        log.info("Started direct-to-OSS upload {} for user {}: {} bytes in {} parts to {}",
+            session.getUploadId(), userId, session.getFileSize(), session.getTotalChunks(), session.getObjectKey());
+        return toVO(session, Collections.emptyList());
+    }
+
+    @Override
+    public List<String> presignChunkUrls(String uploadId, int start, int count, Long userId) {
+        VideoUploadSessionBO session = getSession(uploadId, userId);
+        if (!isDirect(session)) {
+            throw new ServiceException("该上传任务不是直传任务");
+        }
+        int end = Math.min(session.getTotalChunks(), start + Math.min(count, MAX_PRESIGN_BATCH));
+        if (start < 0 || start >= end) {
+            throw new ServiceException("分片序号无效");
+        }
+        OssClient ossClient = OssFactory.instance();
+        List<String> urls = new ArrayList<>(end - start);
+        for (int index = start; index < end; index++) {
+            // Part numbers start at 1
+            urls.add(ossClient.presignUploadPart(session.getObjectKey(), session.getOssUploadId(), index + 1,
+                uploadConfig.getPresignExpire()));
+        }
+        redisTemplate.expire(SESSION_KEY + uploadId, getSessionTtl());
+        return urls;
+    }
+
+    @Override
+    public void uploadChunk(String uploadId, int index, InputStream data, String checksum, Long userId) {
+        VideoUploadSessionBO session = getSession(uploadId, userId);
+        if (isDirect(session)) {
+            throw new ServiceException("直传任务的分片请上传至预签名地址");
+        }
+        if (index < 0 || index >= session.getTotalChunks()) {
+            throw new ServiceException("分片序号无效");
+        }
+        if (StringUtils.isBlank(checksum)) {
+            throw new ServiceException("分片校验值不能为空");
+        }
+
+        // A re-sent chunk overwrites its region, so it stops counting as received until it verifies again
+        String chunksKey = CHUNKS_KEY + uploadId;
+        redisTemplate.opsForSet().remove(chunksKey, String.valueOf(index));
+
+        long offset = index * session.getChunkSize();
+        long length = Math.min(session.getChunkSize(), session.getFileSize() - offset);
+        MessageDigest digest = newSha256();
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(Paths.get(session.getPartPath()), StandardOpenOption.WRITE);
+             ReadableByteChannel source = Channels.newChannel(new DigestInputStream(data, digest))) {
+            while (written < length) {
+                long transferred = channel.transferFrom(source, offset + written, length - written);
+                if (transferred <= 0) {
+                    break;
+                }
+                written += transferred;
+            }
+        } catch (IOException e) {
+            log.error("Error writing chunk {} of upload {}: ", index, uploadId, e);
+            throw new ServiceException("分片写入失败");
+        }
+
+        // A short or corrupted chunk is not recorded, so the client sends it again
+        if (written != length) {
+            throw new ServiceException("分片大小不正确");
+        }
+        if (!HexUtil.encodeHexStr(digest.digest()).equalsIgnoreCase(checksum.trim())) {
+            throw new ServiceException("分片校验失败");
+        }
+
+        redisTemplate.opsForSet().add(chunksKey, String.valueOf(index));
+        redisTemplate.expire(chunksKey, getSessionTtl());
+        redisTemplate.expire(SESSION_KEY + uploadId, getSessionTtl());
+    }
+
+    @Override
+    public VideoUploadSessionVO getUploadStatus(String uploadId, Long userId) {
+        VideoUploadSessionBO session = getSession(uploadId, userId);
+        if (isDirect(session)) {
+            // The bucket is the record of which parts arrived
+            List<Integer> uploaded = OssFactory.instance().listMultipartParts(session.getObjectKey(), session.getOssUploadId())
+                .keySet().stream().map(partNumber -> partNumber - 1).toList();
+            return toVO(session, uploaded);
+        }
+        return toVO(session, getUploadedChunks(uploadId));
+    }
+
+    @Override
+    public VideoAdmissionVO completeUpload(String uploadId, Long userId) {
+        VideoUploadSessionBO session = getSession(uploadId, userId);
+        String lockKey = COMPLETE_LOCK_KEY + uploadId;
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(lockKey, String.valueOf(userId), 10, TimeUnit.MINUTES);
+        if (locked == null || !locked) {
+            throw new ServiceException("上传正在完成中，请勿重复提交");
+        }
+        try {
+            String sourcePath;
+            String contentHash;
+            if (isDirect(session)) {
+                sourcePath = completeDirectUpload(session);
+                // No bytes pass through here; the transcode stage hashes the source when it downloads it
+                contentHash = null;
+            } else {
+                List<Integer> uploaded = getUploadedChunks(uploadId);
+                if (uploaded.size() != session.getTotalChunks()) {
+                    throw new ServiceException("还有" + (session.getTotalChunks() - uploaded.size()) + "个分片未上传");
+                }
+                Path partPath = Paths.get(session.getPartPath());
+                if (Files.size(partPath) != session.getFileSize()) {
+                    throw new ServiceException("文件大小不一致");
+                }
+
+                // Content hash for deduplication; chunks may arrive out of order, so it is taken once at the end
+                contentHash = DigestUtil.sha256Hex(partPath.toFile());
+                sourcePath = videoService.newSourcePath(session.getVideoId(), session.getFileName());
+                FileUtil.mkdir(new File(sourcePath).getParentFile());
+                Files.move(partPath, Paths.get(sourcePath), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            SysVideo video = new SysVideo();
+            video.setId(session.getVideoId());
+            video.setTitle(session.getTitle());
+            video.setDescription(session.getDescription());
+            video.setCategoryId(session.getCategoryId());
+            video.setUserId(userId);
+            video.setTags(session.getTags());
+            video.setThumbnailUrl(session.getThumbnailPath());
+            video.setStatus(VideoStatus.PENDING_TRANSCODE.getCode());
+            video.setCreateTime(LocalDateTime.now());
+            video.setUpdateTime(LocalDateTime.now());
+
+            SysVideoFile videoFile = new SysVideoFile();
+            videoFile.setId(IdUtil.getSnowflakeNextId());
+            videoFile.setVideoId(video.getId());
+            videoFile.setUserId(userId);
+            videoFile.setFileName(session.getFileName());
+            videoFile.setFilePath(sourcePath);
+            videoFile.setFileSize(session.getFileSize());
+            videoFile.setFileType(FileUtil.extName(session.getFileName()));
+            videoFile.setContentHash(contentHash);
+            videoFile.setStorageType(isDirect(session) ? 1 : 0); // Object storage or local storage
+            videoFile.setStatus(VideoStatus.PENDING_TRANSCODE.getCode());
+            videoFile.setCreateTime(LocalDateTime.now());
+            videoFile.setUpdateTime(LocalDateTime.now());
+            VideoAdmissionVO admission;
+            try {
+                // Probed before the registering transaction, so a slow probe holds no connection
+                admission = videoService.registerVideo(video, videoFile, videoService.probeDuration(videoFile));
+            } catch (RuntimeException e) {
+                // Put the assembled file back so the client can retry completing
+                if (!isDirect(session)) {
+                    Files.move(Paths.get(sourcePath), Paths.get(session.getPartPath()), StandardCopyOption.REPLACE_EXISTING);
+                }
+                throw e;
+            }
+
+            redisTemplate.delete(Arrays.asList(SESSION_KEY + uploadId, CHUNKS_KEY + uploadId));
+            if (isDirect(session)) {
+                redisTemplate.opsForHash().delete(DIRECT_SESSIONS_KEY, uploadId);
+            }
+            log.info("Completed resumable upload {} as video {}", uploadId, video.getId());
+            return admission;
+        } catch (IOException e) {
+            log.error("Error completing upload {}: ", uploadId, e);
+            throw new ServiceException("视频上传失败");
+        } finally {
+            redisTemplate.delete(lockKey);
+        }
+    }
+
+    /**
+     * Abort the multipart uploads of direct sessions that expired before completing, so the parts
+     * received so far are not billed indefinitely. A session whose object was assembled but whose
+     * video was never registered has its object deleted instead.
+     */
+    @Scheduled(fixedDelayString = "${video.workspace.sweep-interval:600000}", initialDelay = 60000)
+    public void abortExpiredDirectUploads() {
+        Map<Object, Object> sessions = redisTemplate.opsForHash().entries(DIRECT_SESSIONS_KEY);
+        for (Map.Entry<Object, Object> entry : sessions.entrySet()) {
+            String uploadId = entry.getKey().toString();
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(SESSION_KEY + uploadId))) {
+                continue;
+            }
+            VideoUploadSessionBO session = JSON.parseObject(entry.getValue().toString(), VideoUploadSessionBO.class);
+            OssClient ossClient = OssFactory.instance();
+            try {
+                ossClient.abortMultipartUpload(session.getObjectKey(), session.getOssUploadId());
+                log.info("Aborted multipart upload of expired direct session {}: {}", uploadId, session.getObjectKey());
+            } catch (Exception e) {
+                // Already completed or aborted (e.g. by another node); anything else is retried next sweep
+                log.warn("Error aborting multipart upload of direct session {}: {}", uploadId, e.getMessage());
+                if (!StringUtils.containsIgnoreCase(e.getMessage(), "NoSuchUpload")) {
+                    continue;
+                }
+                try {
+                    // Completed but the video was never registered: nothing refers to the object
+                    if (videoMapper.selectById(session.getVideoId()) == null
+                        && ossClient.getObjectSize(session.getObjectKey()) != null) {
+                        ossClient.delete(session.getObjectKey());
+                        log.info("Deleted unregistered source of expired direct session {}: {}", uploadId, session.getObjectKey());
+                    }
+                } catch (Exception deleteError) {
+                    log.warn("Error deleting source of direct session {}: {}", uploadId, deleteError.getMessage());
+                    continue;
+                }
+            }
+            redisTemplate.opsForHash().delete(DIRECT_SESSIONS_KEY, uploadId);
+        }
+    }
+
+    /**
+     * Check every part arrived with the announced total size, then assemble the object.
+     * An object assembled by an earlier attempt whose registration failed is used as it is.
+     *
+     * @return object key of the source
+     */
+    private String completeDirectUpload(VideoUploadSessionBO session) {
+        OssClient ossClient = OssFactory.instance();
+        Long assembled = ossClient.getObjectSize(session.getObjectKey());
+        if (assembled != null) {
+            if (!assembled.equals(session.getFileSize())) {
+                throw new ServiceException("文件大小不一致");
+            }
+            return session.getObjectKey();
+        }
+        SortedMap<Integer, Part> parts = ossClient.listMultipartParts(session.getObjectKey(), session.getOssUploadId());
+        if (parts.size() != session.getTotalChunks()) {
+            throw new ServiceException("还有" + (session.getTotalChunks() - parts.size()) + "个分片未上传");
+        }
+        long size = parts.values().stream().mapToLong(Part::size).sum();
+        if (size != session.getFileSize()) {
+            throw new ServiceException("文件大小不一致");
+        }
+        ossClient.completeMultipartUpload(session.getObjectKey(), session.getOssUploadId(), parts.values());
+        return session.getObjectKey();
+    }
+
+    /**
+     * Common part of both session kinds: validate the request, save the thumbnail and size the chunks
+     */
+    private VideoUploadSessionBO newSession(VideoChunkUploadInitDTO initDTO, Long userId) {
+        videoService.validateVideoType(initDTO.getFileName());
+        if (initDTO.getFileSize() > uploadConfig.getMaxFileSize()) {
+            throw new ServiceException("视频文件大小不能超过" + FileUtil.readableFileSize(uploadConfig.getMaxFileSize()));
+        }
+        admissionService.checkAdmission();
+
+        VideoUploadSessionBO session = new VideoUploadSessionBO();
+        session.setUploadId(IdUtil.fastSimpleUUID());
+        session.setVideoId(IdUtil.getSnowflakeNextId());
+        session.setUserId(userId);
+        session.setFileName(initDTO.getFileName());
+        session.setFileSize(initDTO.getFileSize());
+        session.setChunkSize(uploadConfig.getChunkSize());
+        session.setTotalChunks((int) ((initDTO.getFileSize() + uploadConfig.getChunkSize() - 1) / uploadConfig.getChunkSize()));
+        session.setThumbnailPath(videoService.saveThumbnail(initDTO.getThumbnailFile(), session.getVideoId()));
+        session.setTitle(initDTO.getTitle());
+        session.setDescription(initDTO.getDescription());
+        session.setCategoryId(initDTO.getCategoryId());
+        session.setTags(StringUtils.join(initDTO.getTags(), ","));
+        return session;
+    }
+
+    private void saveSession(VideoUploadSessionBO session) {
+        redisTemplate.opsForValue().set(SESSION_KEY + session.getUploadId(), JSON.toJSONString(session), getSessionTtl());
+    }
+
+    private boolean isDirect(VideoUploadSessionBO session) {
+        return StringUtils.isNotEmpty(session.getOssUploadId());
+    }
+
+    private VideoUploadSessionBO getSession(String uploadId, Long userId) {
+        String json = redisTemplate.opsForValue().get(SESSION_KEY + uploadId);
+        if (StringUtils.isEmpty(json)) {
+            throw new ServiceException("上传任务不存在或已过期");
+        }
+        VideoUploadSessionBO session = JSON.parseObject(json, VideoUploadSessionBO.class);
+        if (!session.getUserId().equals(userId)) {
+            throw new ServiceException("无权访问该上传任务");
+        }
+        return session;
+    }
+
+    private List<Integer> getUploadedChunks(String uploadId) {
+        Set<String> members = redisTemplate.opsForSet().members(CHUNKS_KEY + uploadId);
+        if (members == null) {
+            return Collections.emptyList();
+        }
+        return members.stream().map(Integer::valueOf).sorted().toList();
+    }
+
+    private VideoUploadSessionVO toVO(VideoUploadSessionBO session, List<Integer> uploadedChunks) {
+        VideoUploadSessionVO vo = new VideoUploadSessionVO();
+        vo.setUploadId(session.getUploadId());
+        vo.setVideoId(session.getVideoId());
+        vo.setDirect(isDirect(session));
+        vo.setFileSize(session.getFileSize());
+        vo.setChunkSize(session.getChunkSize());
+        vo.setTotalChunks(session.getTotalChunks());
+        vo.setUploadedChunks(uploadedChunks);
+        return vo;
+    }
+
+    private Duration getSessionTtl() {
+        return Duration.ofHours(uploadConfig.getSessionTimeout());
+    }
+
+    private MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.dromara.video.service.impl;
+
+import cn.hutool.core.thread.ThreadUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.common.core.utils.StringUtils;
+import org.dromara.common.oss.core.OssClient;
+import org.dromara.common.oss.factory.OssFactory;
+import org.dromara.video.config.VideoUploadConfig;
+import org.dromara.video.service.IVideoSegmentUploadService;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming HLS Segment Upload Service Implementation
+ * A segment counts as finished once ffmpeg lists it in its variant playlist,
+ * which ffmpeg rewrites atomically after closing each segment. In fmp4 single-file mode every
+ * segment lives in one growing file per rendition, which is only finished once the playlist ends.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class VideoSegmentUploadServiceImpl implements IVideoSegmentUploadService {
+
+    private final StringRedisTemplate redisTemplate;
+    private final VideoUploadConfig uploadConfig;
+
+    /**
+     * Redis set of object keys already uploaded, per video file
+     */
+    private static final String UPLOAD_MANIFEST_KEY = "video:upload:manifest:";
+    private static final Duration MANIFEST_TTL = Duration.ofDays(7);
+    private static final String PLAYLIST_NAME = "index.m3u8";
+
+    private final Map<Long, StreamingSession> sessions = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        scheduler = new ScheduledThreadPoolExecutor(Math.max(1, uploadConfig.getStreamingThreads()),
+            ThreadUtil.newNamedThreadFactory("segment-upload-", true));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public void startStreaming(Long videoFileId, String outputDir, String targetDirectory) {
+        if (!uploadConfig.isStreaming()) {
+            return;
+        }
+        // A restarted transcode produces new segments, so nothing from an earlier attempt is reused
+        clearUploadedKeys(videoFileId);
+        StreamingSession session = new StreamingSession(videoFileId, outputDir, targetDirectory);
+        session.future = scheduler.scheduleWithFixedDelay(() -> uploadFinishedSegments(session),
+            uploadConfig.getStreamingInterval(), uploadConfig.getStreamingInterval(), TimeUnit.MILLISECONDS);
+        sessions.put(videoFileId, session);
+        log.info("Started streaming segment upload for video file {} from {}", videoFileId, outputDir);
+    }
+
+    @Override
+    public void stopStreaming(Long videoFileId) {
+        StreamingSession session = sessions.remove(videoFileId);
+        if (session == null) {
+            return;
+        }
+        session.future.cancel(false);
+        // Final sweep on the caller's thread; the lock waits for a scan that is still running
+        uploadFinishedSegments(session);
+        log.info("Stopped streaming segment upload for video file {}, {} segments uploaded",
+            videoFileId, session.uploaded.size());
+    }
+
+    @Override
+    public Set<String> getUploadedKeys(Long videoFileId) {
+        Set<String> keys = redisTemplate.opsForSet().members(UPLOAD_MANIFEST_KEY + videoFileId);
+        return keys != null ? keys : Collections.emptySet();
+    }
+
+    @Override
+    public void markUploaded(Long videoFileId, String objectKey) {
+        String manifestKey = UPLOAD_MANIFEST_KEY + videoFileId;
+        redisTemplate.opsForSet().add(manifestKey, objectKey);
+        redisTemplate.expire(manifestKey, MANIFEST_TTL);
+    }
+
+    @Override
+    public void clearUploadedKeys(Long videoFileId) {
+        redisTemplate.delete(UPLOAD_MANIFEST_KEY + videoFileId);
+    }
+
+    /**
+     * Upload every segment listed in a variant playlist that has not been uploaded yet
+     */
+    private void uploadFinishedSegments(StreamingSession session) {
+        synchronized (session) {
+            File[] variantDirs = new File(session.outputDir).listFiles(File::isDirectory);
+            if (variantDirs == null) {
+                return;
+            }
+            OssClient ossClient = null;
+            for (File variantDir : variantDirs) {
+                for (String segment : listFinishedSegments(variantDir.toPath().resolve(PLAYLIST_NAME))) {
+                    String objectKey = session.targetDirectory + "/" + variantDir.getName() + "/" + segment;
+                    if (session.uploaded.contains(objectKey)) {
+                        continue;
+                    }
+                    try {
+                        if (ossClient == null) {
+                            ossClient = OssFactory.instance();
+                        }
+                        ossClient.uploadFileTransfer(variantDir.toPath().resolve(segment), objectKey, getContentType(segment));
+                        markUploaded(session.videoFileId, objectKey);
+                        session.uploaded.add(objectKey);
+                    } catch (Exception e) {
+                        // Left for the next scan, or for the upload stage which sends whatever is missing
+                        log.warn("Failed to stream segment {} for video file {}: {}", objectKey, session.videoFileId, e.getMessage());
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finished media files referenced by a playlist, in order (byte-range playlists reference one file repeatedly)
+     */
+    private Set<String> listFinishedSegments(Path playlist) {
+        Set<String> segments = new LinkedHashSet<>();
+        if (!Files.isRegularFile(playlist)) {
+            return segments;
+        }
+        try {
+            boolean byteRange = false;
+            boolean ended = false;
+            String last = null;
+            for (String line : Files.readAllLines(playlist, StandardCharsets.UTF_8)) {
+                String trimmed = line.trim();
+                if (trimmed.startsWith("#EXT-X-MAP:")) {
+                    String uri = StringUtils.substringBetween(trimmed, "URI=\"", "\"");
+                    if (uri != null) {
+                        segments.add(uri);
+                    }
+                } else if (trimmed.startsWith("#EXT-X-BYTERANGE:")) {
+                    byteRange = true;
+                } else if ("#EXT-X-ENDLIST".equals(trimmed)) {
+                    ended = true;
+                } else if (StringUtils.isNotEmpty(trimmed) && !trimmed.startsWith("#")) {
+                    segments.add(trimmed);
+                    last = trimmed;
+                }
+            }
+            // ffmpeg is still appending fragments to the file it references last
+            if (byteRange && !ended && last != null) {
+                segments.remove(last);
+            }
+        } catch (IOException e) {
+            log.debug("Playlist {} not readable yet: {}", playlist, e.getMessage());
+        }
+        return segments;
+    }
+
+    /**
+     * Content type of an HLS or storyboard file by extension
+     */
+    public static String getContentType(String fileName) {
+        String lower = fileName.toLowerCase();
+        if (lower.endsWith(".m3u8")) {
+            return "application/vnd.apple.mpegurl";
+        } else if (lower.endsWith(".ts")) {
+            return "video/mp2t";
+        } else if (lower.endsWith(".mp4") || lower.endsWith(".m4s")) {
+            return "video/mp4";
+        } else if (lower.endsWith(".vtt")) {
+            return "text/vtt";
+        } else if (lower.endsWith(".jpg")) {
+            return "image/jpeg";
+        }
+        return "application/octet-stream";
+    }
+
+    /**
+     * State of one output directory being streamed
+     */
+    private static class StreamingSession {
+        private final Long videoFileId;
+        private final String outputDir;
+        private final String targetDirectory;
+        private final Set<String> uploaded = ConcurrentHashMap.newKeySet();
+        private ScheduledFuture<?> future;
+
+        private StreamingSession(Long videoFileId, String outputDir, String targetDirectory) {
+            this.videoFileId = videoFileId;
+            this.outputDir = outputDir;
+            this.targetDirectory = targetDirectory;
+        }
+    }
+}
@@ -1,40 +1,55 @@
 package org.dromara.video.service.impl;
 
 import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.HexUtil;
 import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.common.core.exception.ServiceException;
 import org.dromara.common.core.utils.MapstructUtils;
+import org.dromara.common.core.utils.SpringUtils;
 import org.dromara.common.core.utils.StringUtils;
+import org.dromara.common.ffmpeg.utils.FFmpegUtils;
 import org.dromara.common.mybatis.core.page.PageQuery;
 import org.dromara.common.mybatis.core.page.TableDataInfo;
+import org.dromara.common.oss.factory.OssFactory;
 import org.dromara.video.config.VideoStorageConfig;
 import org.dromara.video.domain.bo.VideoDetailBO;
 import org.dromara.video.domain.dto.VideoUploadDTO;
 import org.dromara.video.domain.entity.SysVideo;
 import org.dromara.video.domain.entity.SysVideoFile;
+import org.dromara.video.domain.enums.TranscodeAdmission;
 import org.dromara.video.domain.enums.VideoStatus;
 import org.dromara.video.domain.message.VideoTranscodeMessage;
+import org.dromara.video.domain.vo.VideoAdmissionVO;
 import org.dromara.video.domain.vo.VideoDetailVO;
 import org.dromara.video.domain.vo.VideoVO;
 import org.dromara.video.mapper.SysVideoFileMapper;
 import org.dromara.video.mapper.SysVideoMapper;
+import org.dromara.video.service.ITranscodeAdmissionService;
 import org.dromara.video.service.IVideoService;
 import org.dromara.video.service.IVideoTranscodeService;
+import org.dromara.video.service.IVideoUploadService;
 import org.dromara.video.service.IVideoViewCountService;
+import org.dromara.video.service.IVideoWorkspaceService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import org.dromara.system.api.RemoteUserService;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.ArrayList;
 
@@ -51,21 +66,28 @@ public class VideoServiceImpl implements IVideoService {
     private final VideoStorageConfig storageConfig;
     private final IVideoTranscodeService transcodeService;
     private final IVideoViewCountService viewCountService;
+    private final IVideoUploadService uploadService;
+    private final ITranscodeAdmissionService admissionService;
+    private final FFmpegUtils fFmpegUtils;
+    private final IVideoWorkspaceService workspaceService;
 
     private static final String[] ALLOWED_VIDEO_TYPES = {".mp4", ".webm", ".avi", ".mov"};
     private static final String[] ALLOWED_IMAGE_TYPES = {".jpg", ".jpeg", ".png"};
     private static final long MAX_VIDEO_SIZE = 30L * 1024 * 1024; // 30MB
     private static final long MAX_THUMBNAIL_SIZE = 2L * 1024 * 1024; // 2MB
 
+    /**
+     * Not transactional itself: the source is saved and probed first, and only the inserts and the
+     * admission run in the {@link #registerVideo} transaction
+     */
     @Override
-    @Transactional(rollbackFor = Exception.class)
-    public void uploadVideo(VideoUploadDTO uploadDTO, Long userId) {
+    public VideoAdmissionVO uploadVideo(VideoUploadDTO uploadDTO, Long userId) {
         MultipartFile videoFile = uploadDTO.getVideoFile();
         MultipartFile thumbnailFile = uploadDTO.getThumbnailFile();
 
         // Validate files
         validateVideoFile(videoFile);
-        validateThumbnailFile(thumbnailFile);
+        admissionService.checkAdmission();
 
         // Save video metadata
         SysVideo video = new SysVideo();
@@ -80,24 +102,20 @@ public class VideoServiceImpl implements IVideoService {
         video.setUpdateTime(LocalDateTime.now());
         try {
             // Save thumbnail
-            String thumbnailPath = saveThumbnail(thumbnailFile, video.getId());
-            video.setThumbnailUrl(thumbnailPath);
-            videoMapper.insert(video);
+            video.setThumbnailUrl(saveThumbnail(thumbnailFile, video.getId()));
 
             // Save video file and get the entity
             SysVideoFile videoFileResult = saveVideoFile(videoFile, video, userId);
-
-            // Send to transcoding queue
-            VideoTranscodeMessage message = VideoTranscodeMessage.builder()
-                .videoId(video.getId())
-                .videoFileId(videoFileResult.getId())
-                .sourceFilePath(videoFileResult.getFilePath())
-                .userId(userId)
-                .fileName(videoFileResult.getFileName())
-                .build();
-
-            transcodeService.sendToTranscode(message);
-
+            try {
+                long duration = probeDuration(videoFileResult);
+                return SpringUtils.getAopProxy(this).registerVideo(video, videoFileResult, duration);
+            } catch (ServiceException e) {
+                FileUtil.del(videoFileResult.getFilePath());
+                throw e;
+            }
+
+        } catch (ServiceException e) {
+            throw e;
         } catch (IOException e) {
             log.error("Error uploading video: ", e);
             throw new ServiceException("视频上传失败");
@@ -107,10 +125,73 @@ public class VideoServiceImpl implements IVideoService {
         }
     }
 
-    /**
-     * Save thumbnail file and return its relative path
-     */
-    private String saveThumbnail(MultipartFile thumbnailFile, Long videoId) throws Exception {
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public VideoAdmissionVO registerVideo(SysVideo video, SysVideoFile videoFile, long duration) {
+        // Local files are reclaimed by the workspace sweeper once this video file no longer needs them
+        boolean inObjectStorage = Objects.equals(videoFile.getStorageType(), 1);
+        video.setDuration(duration);
+        videoFile.setDuration(duration);
+        if (!inObjectStorage) {
+            workspaceService.track(videoFile.getId(), videoFile.getFilePath());
+        }
+        workspaceService.track(videoFile.getId(), video.getThumbnailUrl());
+
+        // The same bytes were transcoded and published before: point at that output instead
+        SysVideoFile duplicate = StringUtils.isNotEmpty(videoFile.getContentHash())
+            ? uploadService.findPublishedDuplicate(videoFile.getContentHash(), videoFile.getId()) : null;
+        if (duplicate != null) {
+            videoMapper.insert(video);
+            videoFileMapper.insert(videoFile);
+            uploadService.publishDuplicate(video.getId(), videoFile.getId(), duplicate);
+            // The local source is only needed for transcoding
+            FileUtil.del(videoFile.getFilePath());
+            return new VideoAdmissionVO(video.getId(), TranscodeAdmission.DUPLICATE.name(), 0L);
+        }
+
+        // Transcode cost scales with duration, so admission is decided on the probed length
+        long estimatedWait = admissionService.estimateWait();
+        TranscodeAdmission admission = admissionService.admit(videoFile.getId(), duration);
+        // file_path is replaced by the published playlist; the source stays reachable for re-transcoding
+        videoFile.setSourcePath(videoFile.getFilePath());
+
+        videoMapper.insert(video);
+        videoFileMapper.insert(videoFile);
+
+        // Send to transcoding queue; a source uploaded straight to OSS is fetched by the transcode node
+        VideoTranscodeMessage message = VideoTranscodeMessage.builder()
+            .videoId(video.getId())
+            .videoFileId(videoFile.getId())
+            .sourceFilePath(inObjectStorage ? null : videoFile.getFilePath())
+            .sourceObjectKey(inObjectStorage ? videoFile.getFilePath() : null)
+            .userId(video.getUserId())
+            .fileName(videoFile.getFileName())
+            .duration(duration)
+            .build();
+
+        if (admission == TranscodeAdmission.DEFERRED) {
+            admissionService.defer(message);
+        } else {
+            transcodeService.sendToTranscode(message);
+        }
+        return new VideoAdmissionVO(video.getId(), admission.name(), estimatedWait);
+    }
+
+    @Override
+    public long probeDuration(SysVideoFile videoFile) {
+        String source = Objects.equals(videoFile.getStorageType(), 1)
+            ? OssFactory.instance().getPrivateUrl(videoFile.getFilePath(), 600) : videoFile.getFilePath();
+        try {
+            return Math.round(fFmpegUtils.probeDuration(source));
+        } catch (Exception e) {
+            log.error("Error probing video {}: ", source, e);
+            throw new ServiceException("无法读取视频时长，请检查视频文件");
+        }
+    }
+
+    @Override
+    public String saveThumbnail(MultipartFile thumbnailFile, Long videoId) {
+        validateThumbnailFile(thumbnailFile);
         String extension = getFileExtension(thumbnailFile.getOriginalFilename());
         String fileName = videoId + "_thumb." + extension;
         String relativePath = generateRelativePath(fileName);
@@ -120,19 +201,28 @@ public class VideoServiceImpl implements IVideoService {
         FileUtil.mkdir(new File(absolutePath).getParentFile());
 
         // Save the thumbnail
-        thumbnailFile.transferTo(new File(absolutePath));
+        try {
+            thumbnailFile.transferTo(new File(absolutePath));
+        } catch (IOException e) {
+            log.error("Error saving thumbnail: ", e);
+            throw new ServiceException("缩略图保存失败");
+        }
 
         return absolutePath;
     }
 
+    @Override
+    public String newSourcePath(Long videoId, String originalFilename) {
+        String fileName = videoId + "." + getFileExtension(originalFilename);
+        return storageConfig.getVideoPath() + File.separator + generateRelativePath(fileName);
+    }
+
     /**
-     * Save video file and its metadata
+     * Save video file and build its metadata
      */
     private SysVideoFile saveVideoFile(MultipartFile file, SysVideo video, Long userId) throws Exception {
         String extension = getFileExtension(file.getOriginalFilename());
-        String fileName = video.getId() + "." + extension;
-        String relativePath = generateRelativePath(fileName);
-        String absolutePath = storageConfig.getVideoPath() + File.separator + relativePath;
+        String absolutePath = newSourcePath(video.getId(), file.getOriginalFilename());
 
         // Get file size before transferring
         long fileSize = file.getSize();
@@ -140,8 +230,11 @@ public class VideoServiceImpl implements IVideoService {
         // Create directories if they don't exist
         FileUtil.mkdir(new File(absolutePath).getParentFile());
 
-        // Save the file
-        file.transferTo(new File(absolutePath));
+        // Save the file, hashing the bytes on the way to disk
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            Files.copy(in, Paths.get(absolutePath), StandardCopyOption.REPLACE_EXISTING);
+        }
 
         // Save file metadata
         SysVideoFile videoFile = new SysVideoFile();
@@ -152,11 +245,11 @@ public class VideoServiceImpl implements IVideoService {
         videoFile.setFilePath(absolutePath);
         videoFile.setFileSize(fileSize);  // Use the size we got earlier
         videoFile.setFileType(extension);
+        videoFile.setContentHash(HexUtil.encodeHexStr(digest.digest()));
         videoFile.setStorageType(0); // Local storage
         videoFile.setStatus(VideoStatus.PENDING_TRANSCODE.getCode());
         videoFile.setCreateTime(LocalDateTime.now());
         videoFile.setUpdateTime(LocalDateTime.now());
-        videoFileMapper.insert(videoFile);
 
         return videoFile;
     }
@@ -173,16 +266,21 @@ public class VideoServiceImpl implements IVideoService {
             throw new ServiceException("请选择要上传的视频文件");
         }
 
-        String extension = getFileExtension(file.getOriginalFilename());
-        if (!isValidFileExtension(extension, ALLOWED_VIDEO_TYPES)) {
-            throw new ServiceException("不支持的视频格式，请上传" + Arrays.toString(ALLOWED_VIDEO_TYPES) + "格式的视频");
-        }
+        validateVideoType(file.getOriginalFilename());
 
         if (file.getSize() > MAX_VIDEO_SIZE) {
             throw new ServiceException("视频文件大小不能超过30MB");
         }
     }
 
+    @Override
+    public void validateVideoType(String fileName) {
+        String extension = getFileExtension(fileName);
+        if (!isValidFileExtension(extension, ALLOWED_VIDEO_TYPES)) {
+            throw new ServiceException("不支持的视频格式，请上传" + Arrays.toString(ALLOWED_VIDEO_TYPES) + "格式的视频");
+        }
+    }
+
     private void validateThumbnailFile(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new ServiceException("请选择要上传的缩略图");
@@ -218,10 +316,15 @@ public class VideoServiceImpl implements IVideoService {
     }
 
     @Override
-    public VideoDetailVO getVideoDetail(Long id) {
+    public VideoDetailVO getVideoDetail(Long id, String viewerId) {
         VideoDetailBO detailBO = videoMapper.selectVideoDetail(id);
-        viewCountService.increaseViewCount(id);
-        return detailBO != null ? detailBO.toVO() : null;
+        if (detailBO == null) {
+            return null;
+        }
+        viewCountService.recordView(id, viewerId);
+        VideoDetailVO vo = detailBO.toVO();
+        vo.setUniqueViewCount(viewCountService.getUniqueViewCount(id));
+        return vo;
     }
 
 
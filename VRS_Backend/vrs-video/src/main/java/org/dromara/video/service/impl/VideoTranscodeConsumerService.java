@@ -1,17 +1,34 @@
 package org.dromara.video.service.impl;
 
+import cn.hutool.core.thread.ThreadUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.dromara.common.ffmpeg.config.FFmpegConfig;
+import org.dromara.video.config.VideoTranscodeConfig;
+import org.dromara.video.domain.message.VideoTranscodeMessage;
+import org.dromara.video.service.ITranscodeAdmissionService;
 import org.dromara.video.service.IVideoTranscodeService;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Video transcode consumer service
- * Runs in background and processes transcode messages from queue
+ * Runs in background and processes transcode messages from queue.
+ * A single dispatcher prefetches a bounded number of messages from Redis
+ * and a fixed pool of workers transcodes them concurrently.
  */
 @Slf4j
 @RequiredArgsConstructor
@@ -19,17 +36,146 @@ import java.util.concurrent.Executors;
 public class VideoTranscodeConsumerService implements CommandLineRunner {
 
     private final IVideoTranscodeService transcodeService;
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final VideoTranscodeConfig transcodeConfig;
+    private final FFmpegConfig ffmpegConfig;
+    private final MeterRegistry meterRegistry;
+    private final ITranscodeAdmissionService admissionService;
+
+    private BlockingQueue<VideoTranscodeMessage> prefetchQueue;
+    private ExecutorService dispatcherExecutor;
+    private ExecutorService workerExecutor;
+    private ScheduledExecutorService prefetchRenewer;
+    private volatile boolean running = true;
 
     @Override
     public void run(String... args) {
-        log.info("Starting video transcode consumer...");
-        executorService.submit(() -> {
+        int workers = resolveWorkerCount();
+        int prefetch = transcodeConfig.getPrefetch() > 0 ? transcodeConfig.getPrefetch() : workers;
+        prefetchQueue = new ArrayBlockingQueue<>(prefetch);
+        meterRegistry.gauge("video.transcode.prefetch.size", prefetchQueue, BlockingQueue::size);
+
+        log.info("Starting video transcode consumer with {} workers, prefetch {}", workers, prefetch);
+        workerExecutor = Executors.newFixedThreadPool(workers, ThreadUtil.newNamedThreadFactory("transcode-worker-", false));
+        for (int i = 0; i < workers; i++) {
+            int workerId = i;
+            workerExecutor.submit(() -> runWorker(workerId));
+        }
+        dispatcherExecutor = Executors.newSingleThreadExecutor(ThreadUtil.newNamedThreadFactory("transcode-dispatcher-", false));
+        dispatcherExecutor.submit(this::runDispatcher);
+        // Prefetched messages hold no lease, keep their pending entries fresh until a worker takes them
+        long renewInterval = Math.max(1, transcodeConfig.getLeaseTimeout() / 3);
+        prefetchRenewer = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("transcode-prefetch-", true));
+        prefetchRenewer.scheduleAtFixedRate(() -> prefetchQueue.forEach(transcodeService::keepAlive),
+            renewInterval, renewInterval, TimeUnit.SECONDS);
+        admissionService.reportWorkers(workers);
+    }
+
+    /**
+     * Stop taking new messages, return prefetched ones to the queue and let running transcodes finish
+     */
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        admissionService.reportWorkers(0);
+        if (dispatcherExecutor == null) {
+            return;
+        }
+        dispatcherExecutor.shutdown();
+        dispatcherExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        prefetchRenewer.shutdownNow();
+
+        // Hand back messages no worker has started, newest first so the original order is kept
+        List<VideoTranscodeMessage> pending = new ArrayList<>();
+        prefetchQueue.drainTo(pending);
+        for (int i = pending.size() - 1; i >= 0; i--) {
             try {
-                transcodeService.handleTranscodeMessage();
+                transcodeService.requeueTranscodeMessage(pending.get(i));
             } catch (Exception e) {
-                log.error("Error in transcode consumer: ", e);
+                log.error("Error returning video {} to transcode queue: ", pending.get(i).getVideoFileId(), e);
             }
-        });
+        }
+
+        workerExecutor.shutdown();
+        if (!workerExecutor.awaitTermination(transcodeConfig.getShutdownTimeout(), TimeUnit.SECONDS)) {
+            log.warn("Transcode workers did not finish within {}s, interrupting", transcodeConfig.getShutdownTimeout());
+            workerExecutor.shutdownNow();
+        }
+        log.info("Stopped video transcode consumer");
+    }
+
+    /**
+     * Pull messages from Redis only while the prefetch buffer has room,
+     * so a node never holds more work than it is about to start
+     */
+    private void runDispatcher() {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                if (prefetchQueue.remainingCapacity() == 0) {
+                    Thread.sleep(200);
+                    continue;
+                }
+                VideoTranscodeMessage message = transcodeService.pollTranscodeMessage(5, TimeUnit.SECONDS);
+                if (message != null) {
+                    prefetchQueue.put(message);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Error in transcode dispatcher: ", e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    private void runWorker(int workerId) {
+        String worker = String.valueOf(workerId);
+        Timer busyTimer = meterRegistry.timer("video.transcode.worker.busy", "worker", worker);
+        Timer queueWaitTimer = meterRegistry.timer("video.transcode.queue.wait", "worker", worker);
+        Counter jobCounter = meterRegistry.counter("video.transcode.worker.jobs", "worker", worker);
+
+        while (running && !Thread.currentThread().isInterrupted()) {
+            VideoTranscodeMessage message;
+            try {
+                message = prefetchQueue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (message == null) {
+                continue;
+            }
+            if (message.getEnqueueTime() != null) {
+                queueWaitTimer.record(Math.max(0, System.currentTimeMillis() - message.getEnqueueTime()), TimeUnit.MILLISECONDS);
+            }
+            long start = System.nanoTime();
+            try {
+                transcodeService.handleTranscodeMessage(message);
+            } catch (Exception e) {
+                log.error("Error in transcode worker {}: ", workerId, e);
+            } finally {
+                busyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                jobCounter.increment();
+            }
+        }
+    }
+
+    /**
+     * Explicit worker count, otherwise as many jobs as fit the cores at the encoder profile's threads each
+     */
+    private int resolveWorkerCount() {
+        if (transcodeConfig.getWorkers() > 0) {
+            return transcodeConfig.getWorkers();
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        int threadsPerJob = ffmpegConfig.jobThreads() > 0 ? ffmpegConfig.jobThreads() : cores;
+        return Math.max(1, cores / threadsPerJob);
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
-} 
\ No newline at end of file
+}
@@ -1,33 +1,68 @@
 package org.dromara.video.service.impl;
 
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.crypto.digest.DigestUtil;
 import com.alibaba.fastjson.JSON;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.common.core.exception.ServiceException;
 import org.dromara.common.core.utils.StringUtils;
+import org.dromara.common.core.utils.file.FileUtils;
+import org.dromara.common.ffmpeg.domain.VideoChunk;
 import org.dromara.common.ffmpeg.domain.VideoTransResult;
 import org.dromara.common.ffmpeg.utils.FFmpegUtils;
-import org.dromara.common.redis.utils.RedisUtils;
-import org.dromara.video.config.RedisChannelConfig;
+import org.dromara.common.oss.factory.OssFactory;
 import org.dromara.video.config.RedisStreamConfig;
+import org.dromara.video.config.VideoTranscodeConfig;
 import org.dromara.video.domain.entity.SysVideo;
 import org.dromara.video.domain.entity.SysVideoFile;
 import org.dromara.video.domain.enums.VideoStatus;
 import org.dromara.video.domain.message.VideoTranscodeMessage;
-import org.dromara.video.domain.message.VideoUploadMessage;
 import org.dromara.video.mapper.SysVideoFileMapper;
 import org.dromara.video.mapper.SysVideoMapper;
+import org.dromara.video.service.ITranscodeAdmissionService;
+import org.dromara.video.service.ITranscodeProgressService;
+import org.dromara.video.service.IVideoSegmentUploadService;
 import org.dromara.video.service.IVideoTranscodeService;
 import org.dromara.video.service.IVideoUploadService;
+import org.dromara.video.service.IVideoWorkspaceService;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.data.redis.connection.stream.StreamRecords;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.HashMap;
+
+import static org.dromara.video.config.RedisStreamConfig.CONSUMER_PREFIX;
 
 /**
  * Video Transcode Service Implementation
@@ -41,18 +76,142 @@ public class VideoTranscodeServiceImpl implements IVideoTranscodeService {
     private final SysVideoFileMapper videoFileMapper;
     private final FFmpegUtils fFmpegUtils;
     private final IVideoUploadService uploadService;
+    private final IVideoSegmentUploadService segmentUploadService;
     private final StringRedisTemplate redisTemplate;
-    private static final String TRANSCODE_LOCK_KEY = "video:transcode:lock:";
-    private static final String TRANSCODE_QUEUE_KEY = "video:transcode:queue";
-    private static final long LOCK_TIMEOUT = 30; // 30 seconds lock timeout
+    private final VideoTranscodeConfig transcodeConfig;
+    private final ITranscodeAdmissionService admissionService;
+    private final IVideoWorkspaceService workspaceService;
+    private final ITranscodeProgressService progressService;
+    private static final String TRANSCODE_LEASE_KEY = "video:transcode:lease:";
+    /**
+     * Chunk count of a split source, present once all its chunk jobs are queued
+     */
+    private static final String CHUNK_DISPATCH_KEY = "video:transcode:chunks:";
+    /**
+     * Redis set of finished chunk indexes, per video file
+     */
+    private static final String CHUNK_DONE_KEY = "video:transcode:chunks:done:";
+    /**
+     * Taken by the node that finishes the last chunk, so the chunks are stitched exactly once
+     */
+    private static final String CHUNK_STITCH_KEY = "video:transcode:chunks:stitch:";
+    private static final Duration CHUNK_STATE_TTL = Duration.ofDays(1);
+    /**
+     * Present while a video is published with its first rendition only and the rest are still transcoding
+     */
+    private static final String PARTIAL_PUBLISH_KEY = "video:transcode:partial:";
+    /**
+     * Finish tag of the last job scheduled for a user, expiring once it is in the past
+     */
+    private static final String FAIR_TAG_KEY = "video:transcode:fair:";
+    private static final String MESSAGE_FIELD = "message";
+    private static final int RECLAIM_BATCH_SIZE = 10;
+
+    /**
+     * Extend the lease only while this consumer still owns it
+     */
+    private static final RedisScript<Long> RENEW_LEASE_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('expire', KEYS[1], ARGV[2]) else return 0 end",
+        Long.class);
+
+    /**
+     * Release the lease only while this consumer still owns it
+     */
+    private static final RedisScript<Long> RELEASE_LEASE_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+        Long.class);
+
+    /**
+     * Schedule a job at finish tag max(now, user's last tag) + cost: short jobs sort first, and a user's
+     * jobs queue behind each other instead of ahead of other users
+     */
+    private static final RedisScript<Long> SCHEDULE_SCRIPT = new DefaultRedisScript<>(
+        "local now = tonumber(ARGV[1]) " +
+        "local last = tonumber(redis.call('get', KEYS[2]) or '0') " +
+        "local finish = math.max(now, last) + tonumber(ARGV[2]) " +
+        "redis.call('set', KEYS[2], finish, 'EX', finish - now + 60) " +
+        "redis.call('zadd', KEYS[1], finish, ARGV[3]) " +
+        "return finish",
+        Long.class);
+
+    /**
+     * Move the lowest scheduled jobs into the stream while fewer than the window are waiting undelivered
+     * (entries are deleted on ack, so undelivered = length - pending); backfill jobs only once nothing is scheduled
+     */
+    private static final RedisScript<Long> PROMOTE_SCRIPT = new DefaultRedisScript<>(
+        "redis.replicate_commands() " +
+        "local waiting = redis.call('xlen', KEYS[2]) - redis.call('xpending', KEYS[2], ARGV[1])[1] " +
+        "local moved = 0 " +
+        "while waiting < tonumber(ARGV[2]) do " +
+        "  local job = redis.call('zpopmin', KEYS[1]) " +
+        "  if #job == 0 then job = redis.call('zpopmin', KEYS[3]) end " +
+        "  if #job == 0 then break end " +
+        "  redis.call('xadd', KEYS[2], '*', ARGV[3], job[1]) " +
+        "  waiting = waiting + 1 " +
+        "  moved = moved + 1 " +
+        "end " +
+        "return moved",
+        Long.class);
+
+    private final String consumerName = CONSUMER_PREFIX + UUID.randomUUID();
+    private final ScheduledExecutorService leaseRenewer =
+        Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("transcode-lease-", true));
+    private volatile long lastReclaimTime;
+
+    @PostConstruct
+    public void init() {
+        try {
+            redisTemplate.opsForStream().createGroup(
+                RedisStreamConfig.TRANSCODE_STREAM,
+                ReadOffset.from("0"),
+                RedisStreamConfig.TRANSCODE_GROUP
+            );
+        } catch (Exception e) {
+            log.debug("Transcode consumer group might already exist: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        leaseRenewer.shutdownNow();
+    }
+
+    /**
+     * Move deferred jobs into the transcode stream as the backlog drains
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void releaseDeferred() {
+        VideoTranscodeMessage message;
+        while ((message = admissionService.pollDeferred()) != null) {
+            log.info("Releasing deferred video file {} to transcode queue", message.getVideoFileId());
+            sendToTranscode(message);
+        }
+    }
 
     @Override
     public void sendToTranscode(VideoTranscodeMessage message) {
         try {
-            // Add message to Redis List instead of publishing
+            message.setEnqueueTime(System.currentTimeMillis());
             String messageJson = JSON.toJSONString(message);
-            redisTemplate.opsForList().rightPush(TRANSCODE_QUEUE_KEY, messageJson);
-            log.info("Added video to transcode queue: {}", messageJson);
+            // Chunks belong to a job that already started, so they skip the schedule
+            if (!transcodeConfig.isFairScheduling() || message.getChunkIndex() != null) {
+                // Add message to the transcode stream, consumed by the transcode consumer group
+                redisTemplate.opsForStream().add(
+                    StreamRecords.newRecord()
+                        .in(RedisStreamConfig.TRANSCODE_STREAM)
+                        .ofMap(Collections.singletonMap(MESSAGE_FIELD, messageJson))
+                );
+                log.info("Added video to transcode queue: {}", messageJson);
+                return;
+            }
+
+            long cost = message.getDuration() != null
+                ? Math.min(message.getDuration(), transcodeConfig.getAgingLimit()) : transcodeConfig.getAgingLimit();
+            Long finish = redisTemplate.execute(SCHEDULE_SCRIPT,
+                Arrays.asList(RedisStreamConfig.TRANSCODE_SCHEDULE, FAIR_TAG_KEY + message.getUserId()),
+                String.valueOf(message.getEnqueueTime() / 1000), String.valueOf(cost), messageJson);
+            log.info("Scheduled video for transcoding at tag {}: {}", finish, messageJson);
+            promoteScheduled();
         } catch (Exception e) {
             log.error("Error sending video to transcode queue: ", e);
             throw new ServiceException("发送转码任务失败");
@@ -60,41 +219,220 @@ public class VideoTranscodeServiceImpl implements IVideoTranscodeService {
     }
 
     @Override
-    public void handleTranscodeMessage() {
-        while (!Thread.currentThread().isInterrupted()) {
-            try {
-                // Try to get message from queue with timeout
-                String messageJson = redisTemplate.opsForList().leftPop(TRANSCODE_QUEUE_KEY, 5, TimeUnit.SECONDS);
-                if (messageJson == null) {
-                    Thread.sleep(1000);
-                    continue;
-                }
+    public void sendToBackfill(VideoTranscodeMessage message) {
+        message.setEnqueueTime(System.currentTimeMillis());
+        String messageJson = JSON.toJSONString(message);
+        redisTemplate.opsForZSet().add(RedisStreamConfig.TRANSCODE_BACKFILL, messageJson, message.getEnqueueTime());
+        log.info("Queued published video file {} for backfill re-transcoding", message.getVideoFileId());
+        promoteScheduled();
+    }
 
-                VideoTranscodeMessage message = JSON.parseObject(messageJson, VideoTranscodeMessage.class);
-                String lockKey = TRANSCODE_LOCK_KEY + message.getVideoFileId();
-
-                // Try to acquire lock with expiration
-                Boolean acquired = redisTemplate.opsForValue().setIfAbsent(lockKey, "1", LOCK_TIMEOUT, TimeUnit.SECONDS);
-                if (acquired != null && acquired) {
-                    try {
-                        processTranscodeMessage(message);
-                    } finally {
-                        // Release lock after processing
-                        redisTemplate.delete(lockKey);
-                    }
-                } else {
-                    log.info("Skip processing, another consumer is handling video: {}", message.getVideoFileId());
-                }
+    @Override
+    public long queueDepth() {
+        Long stream = redisTemplate.opsForStream().size(RedisStreamConfig.TRANSCODE_STREAM);
+        Long scheduled = redisTemplate.opsForZSet().size(RedisStreamConfig.TRANSCODE_SCHEDULE);
+        Long backfill = redisTemplate.opsForZSet().size(RedisStreamConfig.TRANSCODE_BACKFILL);
+        return (stream != null ? stream : 0) + (scheduled != null ? scheduled : 0) + (backfill != null ? backfill : 0);
+    }
+
+    @Override
+    public VideoTranscodeMessage pollTranscodeMessage(long timeout, TimeUnit unit) {
+        // Jobs whose owner stopped renewing its lease take priority over new ones
+        VideoTranscodeMessage reclaimed = reclaimExpiredMessage();
+        if (reclaimed != null) {
+            return reclaimed;
+        }
+        // Also without fair scheduling, backfill jobs wait outside the stream
+        promoteScheduled();
 
-            } catch (Exception e) {
-                log.error("Error in transcode message handler: ", e);
+        // read takes the stream offsets as generic varargs
+        @SuppressWarnings("unchecked")
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream().read(
+            Consumer.from(RedisStreamConfig.TRANSCODE_GROUP, consumerName),
+            StreamReadOptions.empty().count(1).block(Duration.ofMillis(unit.toMillis(timeout))),
+            StreamOffset.create(RedisStreamConfig.TRANSCODE_STREAM, ReadOffset.lastConsumed())
+        );
+        if (records == null || records.isEmpty()) {
+            return null;
+        }
+        return toMessage(records.get(0));
+    }
+
+    @Override
+    public void handleTranscodeMessage(VideoTranscodeMessage message) {
+        // Chunks of one file are leased separately so different nodes can transcode them at once
+        String leaseKey = TRANSCODE_LEASE_KEY + message.getVideoFileId()
+            + (message.getChunkIndex() != null ? ":" + message.getChunkIndex() : "");
+        long leaseTimeout = transcodeConfig.getLeaseTimeout();
+
+        // Acquire the lease for this video file; a live lease means another node is transcoding it
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(leaseKey, consumerName, leaseTimeout, TimeUnit.SECONDS);
+        if (acquired == null || !acquired) {
+            log.info("Skip processing, another consumer is handling video: {}", message.getVideoFileId());
+            // Only drop a duplicate entry we own; an entry claimed by the lease holder stays pending for it
+            if (ownsPendingEntry(message)) {
+                acknowledge(message);
+            }
+            return;
+        }
+
+        // Reset the entry's idle time right after the lease is taken, so the lease key always
+        // expires before the entry becomes reclaimable by other nodes
+        touchPendingEntry(message);
+
+        // Keep both the lease key and the pending stream entry fresh while ffmpeg runs
+        long renewInterval = Math.max(1, leaseTimeout / 3);
+        ScheduledFuture<?> renewal = leaseRenewer.scheduleAtFixedRate(
+            () -> renewLease(leaseKey, message), renewInterval, renewInterval, TimeUnit.SECONDS);
+        try {
+            processTranscodeMessage(message);
+            acknowledge(message);
+        } finally {
+            renewal.cancel(false);
+            redisTemplate.execute(RELEASE_LEASE_SCRIPT, Collections.singletonList(leaseKey), consumerName);
+        }
+    }
+
+    @Override
+    public void keepAlive(VideoTranscodeMessage message) {
+        try {
+            touchPendingEntry(message);
+        } catch (Exception e) {
+            log.error("Error touching prefetched transcode job for video file {}: ", message.getVideoFileId(), e);
+        }
+    }
+
+    @Override
+    public void requeueTranscodeMessage(VideoTranscodeMessage message) {
+        // Re-add as a fresh entry so other nodes can take it right away instead of waiting for the lease to expire
+        redisTemplate.opsForStream().add(
+            StreamRecords.newRecord()
+                .in(RedisStreamConfig.TRANSCODE_STREAM)
+                .ofMap(Collections.singletonMap(MESSAGE_FIELD, JSON.toJSONString(message)))
+        );
+        acknowledge(message);
+        log.info("Returned video to transcode queue: {}", message.getVideoFileId());
+    }
+
+    /**
+     * Top up the stream from the schedule. Jobs enter the stream only as consumers are about to take them,
+     * so a job scheduled later with a lower tag still overtakes everything not yet promoted.
+     */
+    private void promoteScheduled() {
+        redisTemplate.execute(PROMOTE_SCRIPT,
+            Arrays.asList(RedisStreamConfig.TRANSCODE_SCHEDULE, RedisStreamConfig.TRANSCODE_STREAM,
+                RedisStreamConfig.TRANSCODE_BACKFILL),
+            RedisStreamConfig.TRANSCODE_GROUP, String.valueOf(transcodeConfig.getDispatchWindow()), MESSAGE_FIELD);
+    }
+
+    /**
+     * Claim the oldest pending job whose lease expired (its consumer died or hung).
+     * XCLAIM with a min idle time is atomic, so only one node wins each job.
+     */
+    private VideoTranscodeMessage reclaimExpiredMessage() {
+        Duration leaseTimeout = Duration.ofSeconds(transcodeConfig.getLeaseTimeout());
+        long now = System.currentTimeMillis();
+        if (now - lastReclaimTime < leaseTimeout.toMillis() / 2) {
+            return null;
+        }
+        lastReclaimTime = now;
+
+        PendingMessages pending = redisTemplate.opsForStream().pending(
+            RedisStreamConfig.TRANSCODE_STREAM, RedisStreamConfig.TRANSCODE_GROUP, Range.unbounded(), RECLAIM_BATCH_SIZE);
+        for (PendingMessage pendingMessage : pending) {
+            if (pendingMessage.getElapsedTimeSinceLastDelivery().compareTo(leaseTimeout) < 0) {
+                continue;
+            }
+            List<MapRecord<String, Object, Object>> claimed = redisTemplate.opsForStream().claim(
+                RedisStreamConfig.TRANSCODE_STREAM, RedisStreamConfig.TRANSCODE_GROUP, consumerName,
+                XClaimOptions.minIdle(leaseTimeout).ids(pendingMessage.getId()));
+            if (claimed == null || claimed.isEmpty()) {
+                continue;
+            }
+            VideoTranscodeMessage message = toMessage(claimed.get(0));
+            log.warn("Reclaimed transcode job {} for video file {} from {} (delivery {})",
+                pendingMessage.getIdAsString(), message.getVideoFileId(),
+                pendingMessage.getConsumerName(), pendingMessage.getTotalDeliveryCount() + 1);
+
+            // A job that keeps killing its worker is given up instead of crash-looping the cluster
+            if (pendingMessage.getTotalDeliveryCount() >= transcodeConfig.getMaxDeliveries()) {
+                log.error("Transcode job for video file {} exceeded {} deliveries, marking as failed",
+                    message.getVideoFileId(), transcodeConfig.getMaxDeliveries());
+                updateStatusToFailed(message.getVideoId(), message.getVideoFileId());
+                acknowledge(message);
+                continue;
+            }
+            return message;
+        }
+        return null;
+    }
+
+    private void renewLease(String leaseKey, VideoTranscodeMessage message) {
+        try {
+            Long renewed = redisTemplate.execute(RENEW_LEASE_SCRIPT, Collections.singletonList(leaseKey),
+                consumerName, String.valueOf(transcodeConfig.getLeaseTimeout()));
+            if (renewed == null || renewed == 0) {
+                log.warn("Lost transcode lease for video file {}", message.getVideoFileId());
+                return;
             }
+            touchPendingEntry(message);
+        } catch (Exception e) {
+            log.error("Error renewing transcode lease for video file {}: ", message.getVideoFileId(), e);
+        }
+    }
+
+    /**
+     * Claiming our own pending entry resets its idle time, keeping other nodes from reclaiming it.
+     * JUSTID leaves the delivery count alone, so renewals never count towards max-deliveries.
+     */
+    private void touchPendingEntry(VideoTranscodeMessage message) {
+        if (message.getRecordId() == null) {
+            return;
+        }
+        byte[] stream = redisTemplate.getStringSerializer().serialize(RedisStreamConfig.TRANSCODE_STREAM);
+        XClaimOptions options = XClaimOptions.minIdle(Duration.ZERO).ids(message.getRecordId());
+        redisTemplate.execute((RedisCallback<List<RecordId>>) connection -> connection.streamCommands()
+            .xClaimJustId(stream, RedisStreamConfig.TRANSCODE_GROUP, consumerName, options));
+    }
+
+    /**
+     * Whether the stream entry of the message is pending for this consumer
+     */
+    private boolean ownsPendingEntry(VideoTranscodeMessage message) {
+        if (message.getRecordId() == null) {
+            return false;
+        }
+        PendingMessages pending = redisTemplate.opsForStream().pending(RedisStreamConfig.TRANSCODE_STREAM,
+            Consumer.from(RedisStreamConfig.TRANSCODE_GROUP, consumerName),
+            Range.closed(message.getRecordId(), message.getRecordId()), 1);
+        return pending != null && !pending.isEmpty();
+    }
+
+    /**
+     * Acknowledge and delete the stream entry, so the stream length is the number of outstanding jobs
+     */
+    private void acknowledge(VideoTranscodeMessage message) {
+        if (message.getRecordId() == null) {
+            return;
         }
+        redisTemplate.opsForStream().acknowledge(
+            RedisStreamConfig.TRANSCODE_STREAM, RedisStreamConfig.TRANSCODE_GROUP, message.getRecordId());
+        redisTemplate.opsForStream().delete(RedisStreamConfig.TRANSCODE_STREAM, message.getRecordId());
+    }
+
+    private VideoTranscodeMessage toMessage(MapRecord<String, Object, Object> record) {
+        VideoTranscodeMessage message = JSON.parseObject((String) record.getValue().get(MESSAGE_FIELD), VideoTranscodeMessage.class);
+        message.setRecordId(record.getId().getValue());
+        return message;
     }
 
     private void processTranscodeMessage(VideoTranscodeMessage message) {
         try {
             log.info("Processing transcode message: {}", JSON.toJSONString(message));
+            if (message.getChunkIndex() != null) {
+                processChunkMessage(message);
+                return;
+            }
 
             // Check video file status first
             SysVideoFile videoFile = videoFileMapper.selectById(message.getVideoFileId());
@@ -103,59 +441,277 @@ public class VideoTranscodeServiceImpl implements IVideoTranscodeService {
                 return;
             }
 
-            // Only proceed if status is PENDING_TRANSCODE
-            if (videoFile.getStatus() != VideoStatus.PENDING_TRANSCODE.getCode()) {
+            // Only proceed if status is PENDING_TRANSCODE, or TRANSCODING for a job reclaimed from a dead node
+            // (holding the lease guarantees nobody else is transcoding it), or PUBLISHED with only its first rendition
+            // or being backfilled
+            boolean partiallyPublished = Objects.equals(videoFile.getStatus(), VideoStatus.PUBLISHED.getCode())
+                && (isBackfill(message) || Boolean.TRUE.equals(redisTemplate.hasKey(PARTIAL_PUBLISH_KEY + message.getVideoFileId())));
+            if (!Objects.equals(videoFile.getStatus(), VideoStatus.PENDING_TRANSCODE.getCode())
+                && !Objects.equals(videoFile.getStatus(), VideoStatus.TRANSCODING.getCode()) && !partiallyPublished) {
                 log.info("Skip transcoding for video file {} as its status is not PENDING_TRANSCODE (current status: {})",
                     message.getVideoFileId(), videoFile.getStatus());
                 return;
             }
 
-            // Update video status to transcoding
-            SysVideo video = new SysVideo();
-            video.setId(message.getVideoId());
-            video.setStatus(VideoStatus.TRANSCODING.getCode());
-            videoMapper.updateById(video);
+            // A partially published video stays playable while the rest of its renditions are made
+            if (!partiallyPublished) {
+                // Update video status to transcoding
+                SysVideo video = new SysVideo();
+                video.setId(message.getVideoId());
+                video.setStatus(VideoStatus.TRANSCODING.getCode());
+                videoMapper.updateById(video);
 
-            // Update video file status
-            videoFile = new SysVideoFile();
-            videoFile.setId(message.getVideoFileId());
-            videoFile.setStatus(VideoStatus.TRANSCODING.getCode());
-            videoFileMapper.updateById(videoFile);
+                // Update video file status
+                videoFile = new SysVideoFile();
+                videoFile.setId(message.getVideoFileId());
+                videoFile.setStatus(VideoStatus.TRANSCODING.getCode());
+                videoFileMapper.updateById(videoFile);
+            }
 
-            // Perform transcoding
-            VideoTransResult videoTransResult = fFmpegUtils.convertToHls(message.getSourceFilePath(), message.getVideoFileId());
+            // A source uploaded straight to OSS is fetched to local disk first
+            Long videoFileId = message.getVideoFileId();
+            Path downloadedSource = null;
+            String sourcePath = message.getSourceFilePath();
+            VideoTransResult videoTransResult;
+            boolean[] published = {false};
+            try {
+                if (StringUtils.isNotEmpty(message.getSourceObjectKey())) {
+                    downloadedSource = fetchSource(message);
+                    sourcePath = downloadedSource.toString();
+                    // Its content hash is only known now: reuse the output of an identical published file
+                    if (!partiallyPublished && !isBackfill(message)
+                        && reusePublishedDuplicate(message, DigestUtil.sha256Hex(downloadedSource.toFile()))) {
+                        return;
+                    }
+                } else {
+                    workspaceService.touch(sourcePath);
+                }
+
+                // Long sources are split and fanned out to the whole cluster instead
+                if (dispatchChunks(message, sourcePath)) {
+                    return;
+                }
+
+                // Perform transcoding, shipping finished segments to OSS while ffmpeg runs
+                segmentUploadService.startStreaming(videoFileId, fFmpegUtils.getOutputDir(videoFileId), getTargetDirectory(message));
+                try {
+                    // A backfilled video is already playable in full, its new output is swapped in once complete
+                    videoTransResult = fFmpegUtils.convertToHls(sourcePath, videoFileId,
+                        !transcodeConfig.isProgressivePublish() || isBackfill(message)
+                        ? null : finished -> published[0] |= publishRendition(message, finished));
+                } finally {
+                    segmentUploadService.stopStreaming(videoFileId);
+                }
+            } finally {
+                if (downloadedSource != null) {
+                    FileUtils.del(downloadedSource.toFile());
+                }
+            }
 
             // Update status to PENDING_UPLOAD and send upload message
-            updateStatusAndSendUpload(message, videoTransResult);
+            updateStatusAndSendUpload(message, videoTransResult, published[0] || isBackfill(message));
 
         } catch (Exception e) {
+            // A job killed for stalling goes back on the queue until it has used up its deliveries
+            if (progressService.clearStalled(message.getVideoFileId(), message.getChunkIndex()) && requeueStalled(message)) {
+                return;
+            }
             log.error("Error handling transcode message: ", e);
             // Update status to transcode failed
             updateStatusToFailed(message.getVideoId(), message.getVideoFileId());
         }
     }
 
-    private void updateStatusAndSendUpload(VideoTranscodeMessage transcodeMessage, VideoTransResult videoTransResult) {
+    private boolean requeueStalled(VideoTranscodeMessage message) {
+        int stalls = message.getStalls() != null ? message.getStalls() + 1 : 1;
+        if (stalls >= transcodeConfig.getMaxDeliveries()) {
+            log.error("Transcode job for video file {} stalled {} times, marking as failed", message.getVideoFileId(), stalls);
+            return false;
+        }
+        log.warn("Transcode job for video file {} stalled, returning it to the queue ({}/{})",
+            message.getVideoFileId(), stalls, transcodeConfig.getMaxDeliveries());
+        message.setStalls(stalls);
+        requeueTranscodeMessage(message);
+        return true;
+    }
+
+    /**
+     * Upload and publish the newest finished rendition while the higher ones are still being encoded.
+     * A failure only costs the early publish: the full upload later sends everything.
+     */
+    private boolean publishRendition(VideoTranscodeMessage message, VideoTransResult finished) {
+        Long videoFileId = message.getVideoFileId();
+        String resolution = finished.getResolutions().get(finished.getResolutions().size() - 1);
+        try {
+            boolean published = uploadService.publishRendition(message.getVideoId(), videoFileId,
+                finished.getOutputDir(), getTargetDirectory(message), resolution);
+            if (published) {
+                redisTemplate.opsForValue().set(PARTIAL_PUBLISH_KEY + videoFileId, resolution, CHUNK_STATE_TTL);
+            }
+            return published;
+        } catch (Exception e) {
+            log.error("Error publishing {} rendition of video file {}: ", resolution, videoFileId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Download a source the client uploaded straight to OSS
+     *
+     * @return local temporary copy, deleted by the caller
+     */
+    private Path fetchSource(VideoTranscodeMessage message) {
+        log.info("Downloading source {} of video file {}", message.getSourceObjectKey(), message.getVideoFileId());
+        return OssFactory.instance().fileDownload(message.getSourceObjectKey());
+    }
+
+    /**
+     * Record the content hash of a source uploaded straight to OSS, so later uploads of the same bytes are
+     * deduplicated against it, and publish on an identical published file's output instead of encoding
+     *
+     * @return whether the video file was published as a duplicate
+     */
+    private boolean reusePublishedDuplicate(VideoTranscodeMessage message, String contentHash) {
+        SysVideoFile videoFile = new SysVideoFile();
+        videoFile.setId(message.getVideoFileId());
+        videoFile.setContentHash(contentHash);
+        videoFileMapper.updateById(videoFile);
+
+        SysVideoFile duplicate = uploadService.findPublishedDuplicate(contentHash, message.getVideoFileId());
+        if (duplicate == null) {
+            return false;
+        }
+        uploadService.publishDuplicate(message.getVideoId(), message.getVideoFileId(), duplicate);
+        admissionService.release(message.getVideoFileId());
+        return true;
+    }
+
+    /**
+     * Split a long source at keyframes and queue one transcode job per chunk
+     *
+     * @return false when the source should be transcoded whole
+     */
+    private boolean dispatchChunks(VideoTranscodeMessage message, String sourcePath) {
+        if (transcodeConfig.getChunkDuration() <= 0) {
+            return false;
+        }
+        Long videoFileId = message.getVideoFileId();
+        String dispatchKey = CHUNK_DISPATCH_KEY + videoFileId;
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(dispatchKey))) {
+            // Redelivered after its chunks were already queued
+            log.info("Chunks of video file {} already dispatched", videoFileId);
+            return true;
+        }
+        long duration = message.getDuration() != null
+            ? message.getDuration() : Math.round(fFmpegUtils.probeDuration(sourcePath));
+        if (duration < transcodeConfig.getChunkMinDuration()) {
+            return false;
+        }
+        // Chosen once for the whole source so every chunk encodes the same renditions
+        int[] ladder = fFmpegUtils.selectLadder(sourcePath, videoFileId);
+        List<VideoChunk> chunks = fFmpegUtils.splitIntoChunks(sourcePath, videoFileId,
+            transcodeConfig.getChunkDuration());
+        if (chunks.size() <= 1) {
+            return false;
+        }
+
+        redisTemplate.delete(Arrays.asList(CHUNK_DONE_KEY + videoFileId, CHUNK_STITCH_KEY + videoFileId));
+        // Chunked output is not streamed, the upload stage sends the whole stitched directory
+        segmentUploadService.clearUploadedKeys(videoFileId);
+        for (VideoChunk chunk : chunks) {
+            sendToTranscode(VideoTranscodeMessage.builder()
+                .videoId(message.getVideoId())
+                .videoFileId(videoFileId)
+                .sourceFilePath(chunk.getPath())
+                .userId(message.getUserId())
+                .fileName(message.getFileName())
+                .chunkIndex(chunk.getIndex())
+                .chunkCount(chunks.size())
+                .chunkStart(chunk.getStart())
+                .bitrateLadder(ladder)
+                .duration(duration)
+                .backfillRevision(message.getBackfillRevision())
+                .build());
+        }
+        redisTemplate.opsForValue().set(dispatchKey, String.valueOf(chunks.size()), CHUNK_STATE_TTL);
+        log.info("Dispatched {} chunks of video file {} ({}s)", chunks.size(), videoFileId, duration);
+        return true;
+    }
+
+    /**
+     * Transcode one chunk; whoever finishes the last chunk stitches the playlists and hands off to upload
+     */
+    private void processChunkMessage(VideoTranscodeMessage message) {
+        Long videoFileId = message.getVideoFileId();
+        SysVideoFile videoFile = videoFileMapper.selectById(videoFileId);
+        Integer expected = isBackfill(message) ? VideoStatus.PUBLISHED.getCode() : VideoStatus.TRANSCODING.getCode();
+        if (videoFile == null || !Objects.equals(videoFile.getStatus(), expected)) {
+            // Another chunk failed, or the file was already stitched
+            log.info("Skip chunk {} of video file {} as the file is no longer transcoding",
+                message.getChunkIndex(), videoFileId);
+            return;
+        }
+
+        fFmpegUtils.convertChunkToHls(message.getSourceFilePath(), videoFileId, message.getChunkIndex(), message.getChunkStart(),
+            message.getBitrateLadder());
+
+        String doneKey = CHUNK_DONE_KEY + videoFileId;
+        redisTemplate.opsForSet().add(doneKey, String.valueOf(message.getChunkIndex()));
+        redisTemplate.expire(doneKey, CHUNK_STATE_TTL);
+        Long done = redisTemplate.opsForSet().size(doneKey);
+        log.info("Finished chunk {} of video file {} ({}/{})", message.getChunkIndex(), videoFileId, done, message.getChunkCount());
+        if (done == null || done < message.getChunkCount()) {
+            return;
+        }
+        Boolean stitcher = redisTemplate.opsForValue().setIfAbsent(CHUNK_STITCH_KEY + videoFileId, consumerName, CHUNK_STATE_TTL);
+        if (stitcher == null || !stitcher) {
+            return;
+        }
+
+        VideoTransResult videoTransResult = fFmpegUtils.stitchChunks(videoFileId, message.getChunkCount(), message.getDuration(),
+            message.getBitrateLadder());
+        redisTemplate.delete(Arrays.asList(CHUNK_DISPATCH_KEY + videoFileId, doneKey, CHUNK_STITCH_KEY + videoFileId));
+        updateStatusAndSendUpload(message, videoTransResult, isBackfill(message));
+    }
+
+    /**
+     * @param published the video is already published (with its first rendition, or in full when backfilled)
+     *                  and keeps that status
+     */
+    private void updateStatusAndSendUpload(VideoTranscodeMessage transcodeMessage, VideoTransResult videoTransResult,
+                                           boolean published) {
         try {
             String outputDir = videoTransResult.getOutputDir();
             String resolution = StringUtils.join(videoTransResult.getResolutions(), ",");
             long duration = videoTransResult.getDuration();
+            List<Integer> bitrates = videoTransResult.getBitrates();
+            List<String> ladder = new ArrayList<>();
+            for (int i = 0; i < bitrates.size(); i++) {
+                ladder.add(videoTransResult.getResolutions().get(i) + ":" + bitrates.get(i));
+            }
+            Integer bitrate = bitrates.stream().max(Integer::compare).orElse(null);
 
-            // Update status to PENDING_UPLOAD
-            SysVideo video = new SysVideo();
-            video.setId(transcodeMessage.getVideoId());
-            video.setStatus(VideoStatus.PENDING_UPLOAD.getCode());
-            video.setDuration(duration);
-            videoMapper.updateById(video);
+            // A backfilled file keeps describing its live output until the upload swaps the new one in
+            if (!isBackfill(transcodeMessage)) {
+                // Update status to PENDING_UPLOAD
+                SysVideo video = new SysVideo();
+                video.setId(transcodeMessage.getVideoId());
+                video.setStatus(published ? null : VideoStatus.PENDING_UPLOAD.getCode());
+                video.setDuration(duration);
+                videoMapper.updateById(video);
 
-            SysVideoFile videoFile = new SysVideoFile();
-            videoFile.setId(transcodeMessage.getVideoFileId());
-            videoFile.setStatus(VideoStatus.PENDING_UPLOAD.getCode());
-            videoFile.setFileType("hls");
-            videoFile.setFilePath(outputDir);
-            videoFile.setResolution(resolution);
-            videoFile.setDuration(duration);
-            videoFileMapper.updateById(videoFile);
+                SysVideoFile videoFile = new SysVideoFile();
+                videoFile.setId(transcodeMessage.getVideoFileId());
+                videoFile.setStatus(published ? null : VideoStatus.PENDING_UPLOAD.getCode());
+                videoFile.setFileType("hls");
+                // A published file keeps pointing at its OSS master playlist
+                videoFile.setFilePath(published ? null : outputDir);
+                videoFile.setResolution(resolution);
+                videoFile.setBitrateLadder(String.join(",", ladder));
+                videoFile.setBitrate(bitrate);
+                videoFile.setDuration(duration);
+                videoFileMapper.updateById(videoFile);
+            }
 
             // Send transcode complete event to Redis Stream
             Map<String, String> event = new HashMap<>();
@@ -166,8 +722,13 @@ public class VideoTranscodeServiceImpl implements IVideoTranscodeService {
             event.put("resolution", resolution);
             event.put("duration", String.valueOf(duration));
             event.put("userId", transcodeMessage.getUserId().toString());
-            event.put("targetDirectory", "videos/" + transcodeMessage.getVideoFileId());
+            event.put("targetDirectory", getTargetDirectory(transcodeMessage));
             event.put("timestamp", String.valueOf(System.currentTimeMillis()));
+            if (isBackfill(transcodeMessage)) {
+                event.put("backfill", Boolean.TRUE.toString());
+                event.put("bitrateLadder", String.join(",", ladder));
+                event.put("bitrate", String.valueOf(bitrate));
+            }
 
             // Add event to stream
             redisTemplate.opsForStream().add(
@@ -175,6 +736,8 @@ public class VideoTranscodeServiceImpl implements IVideoTranscodeService {
                     .in(RedisStreamConfig.VIDEO_PROCESS_STREAM)
                     .ofMap(event)
             );
+            admissionService.release(transcodeMessage.getVideoFileId());
+            redisTemplate.delete(PARTIAL_PUBLISH_KEY + transcodeMessage.getVideoFileId());
 
         } catch (Exception e) {
             log.error("Error updating status and sending upload message: ", e);
@@ -182,17 +745,43 @@ public class VideoTranscodeServiceImpl implements IVideoTranscodeService {
         }
     }
 
+    /**
+     * OSS prefix the HLS output of a video file is uploaded to
+     */
+    private String getTargetDirectory(Long videoFileId) {
+        return "videos/" + videoFileId;
+    }
+
+    /**
+     * OSS prefix of a job's output; a backfill gets a fresh one, so the live output is never overwritten
+     */
+    private String getTargetDirectory(VideoTranscodeMessage message) {
+        String targetDirectory = getTargetDirectory(message.getVideoFileId());
+        return isBackfill(message) ? targetDirectory + "/r" + message.getBackfillRevision() : targetDirectory;
+    }
+
+    private boolean isBackfill(VideoTranscodeMessage message) {
+        return message.getBackfillRevision() != null;
+    }
+
+    /**
+     * Mark a video failed, unless it is already published (with its first rendition) and stays playable
+     */
     private void updateStatusToFailed(Long videoId, Long videoFileId) {
         try {
             SysVideo video = new SysVideo();
-            video.setId(videoId);
             video.setStatus(VideoStatus.TRANSCODE_FAILED.getCode());
-            videoMapper.updateById(video);
+            videoMapper.update(video, new LambdaUpdateWrapper<SysVideo>()
+                .eq(SysVideo::getId, videoId)
+                .ne(SysVideo::getStatus, VideoStatus.PUBLISHED.getCode()));
 
             SysVideoFile videoFile = new SysVideoFile();
-            videoFile.setId(videoFileId);
             videoFile.setStatus(VideoStatus.TRANSCODE_FAILED.getCode());
-            videoFileMapper.updateById(videoFile);
+            videoFileMapper.update(videoFile, new LambdaUpdateWrapper<SysVideoFile>()
+                .eq(SysVideoFile::getId, videoFileId)
+                .ne(SysVideoFile::getStatus, VideoStatus.PUBLISHED.getCode()));
+            admissionService.release(videoFileId);
+            redisTemplate.delete(PARTIAL_PUBLISH_KEY + videoFileId);
         } catch (Exception e) {
             log.error("Error updating failed status: ", e);
         }
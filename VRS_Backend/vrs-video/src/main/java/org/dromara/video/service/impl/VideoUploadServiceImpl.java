@@ -1,5 +1,8 @@
 package org.dromara.video.service.impl;
 
+import cn.hutool.core.thread.ThreadUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.common.core.utils.StringUtils;
@@ -8,40 +11,65 @@ import org.dromara.common.oss.core.OssClient;
 import org.dromara.common.oss.entity.UploadResult;
 import org.dromara.common.oss.factory.OssFactory;
 import org.dromara.video.config.RedisStreamConfig;
+import org.dromara.video.config.VideoUploadConfig;
 import org.dromara.video.domain.entity.SysVideo;
 import org.dromara.video.domain.entity.SysVideoFile;
 import org.dromara.video.domain.enums.VideoStatus;
 import org.dromara.video.mapper.SysVideoFileMapper;
 import org.dromara.video.mapper.SysVideoMapper;
+import org.dromara.video.service.IVideoSegmentUploadService;
 import org.dromara.video.service.IVideoUploadService;
-import org.springframework.data.redis.connection.stream.*;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
 import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
 import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.data.redis.connection.stream.StreamOffset;
-import org.springframework.data.redis.connection.stream.MapRecord;
 import org.springframework.data.redis.connection.stream.StreamReadOptions;
-import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.Collections;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.dromara.video.config.RedisStreamConfig.CONSUMER_PREFIX;
 
 /**
  * Video Upload Service Implementation
+ * A pool of workers consumes transcode-complete events from the process stream. Every uploaded
+ * object key is recorded in the per-file manifest, so a retried upload only sends what is missing.
+ * An event stays pending until its upload succeeds; pending events of dead or failed consumers are
+ * reclaimed after video.upload.reclaim-idle seconds and given up after max-deliveries attempts.
+ * With progressive publish the lowest rendition is published first from the transcode worker; the
+ * transcode-complete event then uploads the rest of an already published video.
+ * A backfill re-transcode is uploaded under its own revision prefix and swapped in with a single row update,
+ * leaving the previous output in place for players that already loaded it.
  */
 @Slf4j
 @RequiredArgsConstructor
@@ -51,14 +79,39 @@ public class VideoUploadServiceImpl implements IVideoUploadService {
     private final SysVideoMapper videoMapper;
     private final SysVideoFileMapper videoFileMapper;
     private final StringRedisTemplate redisTemplate;
+    private final IVideoSegmentUploadService segmentUploadService;
+    private final VideoUploadConfig uploadConfig;
+    private static final int RECLAIM_BATCH_SIZE = 10;
+    private static final String MASTER_PLAYLIST = "master.m3u8";
+    /**
+     * Storyboard directory under the transcoded directory, and its WebVTT track beside the sprite sheets
+     */
+    private static final String STORYBOARD_DIR = "storyboard";
+    private static final String STORYBOARD_TRACK = STORYBOARD_DIR + "/storyboard.vtt";
+
     private ExecutorService executorService;
     private volatile boolean running = true;
+    private final AtomicLong lastReclaimTime = new AtomicLong();
 
     @PostConstruct
     public void init() {
-        executorService = Executors.newSingleThreadExecutor();
-        executorService.submit(this::handleUploadMessage);
-        log.info("Started Redis Stream consumer for video uploads");
+        // MKSTREAM creates the stream along with the group, reading from the start picks up events sent before
+        try {
+            redisTemplate.opsForStream().createGroup(
+                RedisStreamConfig.VIDEO_PROCESS_STREAM,
+                ReadOffset.from("0"),
+                RedisStreamConfig.CONSUMER_GROUP
+            );
+        } catch (Exception e) {
+            log.debug("Consumer group might already exist: {}", e.getMessage());
+        }
+
+        int workers = Math.max(1, uploadConfig.getWorkers());
+        executorService = Executors.newFixedThreadPool(workers, ThreadUtil.newNamedThreadFactory("video-upload-", false));
+        for (int i = 0; i < workers; i++) {
+            executorService.submit(this::handleUploadMessage);
+        }
+        log.info("Started Redis Stream consumer for video uploads with {} workers", workers);
     }
 
     @PreDestroy
@@ -74,132 +127,410 @@ public class VideoUploadServiceImpl implements IVideoUploadService {
     public void handleUploadMessage() {
         String consumerId = CONSUMER_PREFIX + UUID.randomUUID();
 
-        try {
-            // Create stream if not exists by adding a dummy message that we'll delete
+        while (running && !Thread.currentThread().isInterrupted()) {
             try {
-                redisTemplate.opsForStream().add(
-                    RedisStreamConfig.VIDEO_PROCESS_STREAM,
-                    Collections.singletonMap("init", "init")
-                );
-            } catch (Exception e) {
-                log.debug("Stream might already exist: {}", e.getMessage());
-            }
+                // Events whose consumer died or failed take priority over new ones
+                List<MapRecord<String, Object, Object>> records = reclaimIdleRecords(consumerId);
+                if (records.isEmpty()) {
+                    records = readNewRecords(consumerId);
+                }
+                if (records == null || records.isEmpty()) {
+                    continue;
+                }
 
-            // Create consumer group
-            try {
-                redisTemplate.opsForStream().createGroup(
-                    RedisStreamConfig.VIDEO_PROCESS_STREAM,
-                    RedisStreamConfig.CONSUMER_GROUP
-                );
+                for (MapRecord<String, Object, Object> record : records) {
+                    handleRecord(record, consumerId);
+                }
             } catch (Exception e) {
-                log.debug("Consumer group might already exist: {}", e.getMessage());
+                log.error("Error in upload message handler: ", e);
+                ThreadUtil.sleep(1000); // Add a small delay on error to prevent tight loop
             }
+        }
+    }
 
-            while (running && !Thread.currentThread().isInterrupted()) {
-                try {
-                    List<MapRecord<String, Object, Object>> records = redisTemplate
-                        .opsForStream()
-                        .read(
-                            Consumer.from(RedisStreamConfig.CONSUMER_GROUP, consumerId),
-                            StreamReadOptions.empty().block(Duration.ofSeconds(0)),
-                            StreamOffset.create(RedisStreamConfig.VIDEO_PROCESS_STREAM, ReadOffset.lastConsumed())
-                        );
-
-                    if (records == null || records.isEmpty()) {
-                        continue;
-                    }
-
-                    for (MapRecord<String, Object, Object> record : records) {
-                        Map<Object, Object> value = record.getValue();
-                        try {
-                            if (RedisStreamConfig.EventType.TRANSCODE_COMPLETE.equals(value.get("eventType"))) {
-                                Long videoId = Long.valueOf((String) value.get("videoId"));
-                                Long videoFileId = Long.valueOf((String) value.get("videoFileId"));
-                                String outputDir = (String) value.get("outputDir");
-                                String targetDirectory = (String) value.get("targetDirectory");
-
-                                processUpload(videoId, videoFileId, outputDir, targetDirectory);
-                            }
-
-                            redisTemplate.opsForStream().acknowledge(
-                                RedisStreamConfig.VIDEO_PROCESS_STREAM,
-                                RedisStreamConfig.CONSUMER_GROUP,
-                                record.getId()
-                            );
-
-                        } catch (Exception e) {
-                            log.error("Error processing upload message for record {}: ", record.getId(), e);
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error("Error in upload message handler: ", e);
-                    Thread.sleep(1000); // Add a small delay on error to prevent tight loop
-                }
+    @Override
+    public String uploadThumbnail(String thumbnailPath) {
+        String suffix = StringUtils.substring(thumbnailPath, thumbnailPath.lastIndexOf(".") + 1);
+
+        UploadResult uploadResult = OssFactory.instance().upload(Path.of(thumbnailPath), getThumbnailObjectName(thumbnailPath), null, suffix);
+        log.info("Thumbnail upload complete. S3 URL: {}", uploadResult.getUrl());
+        return uploadResult.getUrl();
+    }
+
+    @Override
+    public boolean publishRendition(Long videoId, Long videoFileId, String sourceDirectory, String targetDirectory,
+                                    String resolution) throws IOException {
+        SysVideo video = videoMapper.selectById(videoId);
+        if (video == null) {
+            log.error("Video not found: {}", videoId);
+            return false;
+        }
+        OssClient ossClient = OssFactory.instance();
+        Set<String> uploadedKeys = segmentUploadService.getUploadedKeys(videoFileId);
+        Path root = Path.of(sourceDirectory);
+        Path variantDir = root.resolve(resolution);
+        String videoS3Url = uploadRemainingFiles(ossClient, videoFileId, sourceDirectory, targetDirectory, uploadedKeys,
+            () -> { }, file -> file.startsWith(variantDir) || file.startsWith(root.resolve(STORYBOARD_DIR))
+                || isMasterPlaylist(file));
+        String thumbnailUrl = uploadThumbnailOnce(ossClient, videoFileId, video.getThumbnailUrl(), uploadedKeys);
+
+        // Still transcoding, or published by an earlier attempt of the same job
+        SysVideoFile videoFile = new SysVideoFile();
+        videoFile.setFilePath(videoS3Url);
+        videoFile.setResolution(resolution);
+        videoFile.setStoryboardUrl(getStoryboardUrl(ossClient, sourceDirectory, targetDirectory));
+        videoFile.setStatus(VideoStatus.PUBLISHED.getCode());
+        int updated = videoFileMapper.update(videoFile, new LambdaUpdateWrapper<SysVideoFile>()
+            .eq(SysVideoFile::getId, videoFileId)
+            .in(SysVideoFile::getStatus, VideoStatus.TRANSCODING.getCode(), VideoStatus.PUBLISHED.getCode()));
+        if (updated == 0) {
+            return false;
+        }
+        SysVideo videoUpdate = new SysVideo();
+        videoUpdate.setId(videoId);
+        videoUpdate.setStatus(VideoStatus.PUBLISHED.getCode());
+        videoUpdate.setThumbnailUrl(thumbnailUrl);
+        videoMapper.updateById(videoUpdate);
+        log.info("Published video file {} with its {} rendition: {}", videoFileId, resolution, videoS3Url);
+        return true;
+    }
+
+    @Override
+    public SysVideoFile findPublishedDuplicate(String contentHash, Long videoFileId) {
+        List<SysVideoFile> duplicates = videoFileMapper.selectList(new LambdaQueryWrapper<SysVideoFile>()
+            .eq(SysVideoFile::getContentHash, contentHash)
+            .eq(SysVideoFile::getStatus, VideoStatus.PUBLISHED.getCode())
+            .ne(SysVideoFile::getId, videoFileId)
+            .orderByAsc(SysVideoFile::getId)
+            .last("limit 1"));
+        return duplicates.isEmpty() ? null : duplicates.get(0);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void publishDuplicate(Long videoId, Long videoFileId, SysVideoFile duplicate) {
+        log.info("Video file {} has the same content as published file {}, reusing {}",
+            videoFileId, duplicate.getId(), duplicate.getFilePath());
+
+        // The thumbnail is per video, so it still goes to OSS
+        SysVideo video = videoMapper.selectById(videoId);
+        String thumbnailUrl = video != null && StringUtils.isNotEmpty(video.getThumbnailUrl())
+            ? uploadThumbnail(video.getThumbnailUrl()) : null;
+
+        SysVideo videoUpdate = new SysVideo();
+        videoUpdate.setId(videoId);
+        videoUpdate.setStatus(VideoStatus.PUBLISHED.getCode());
+        videoUpdate.setThumbnailUrl(thumbnailUrl);
+        videoUpdate.setDuration(duplicate.getDuration());
+        videoMapper.updateById(videoUpdate);
+
+        SysVideoFile fileUpdate = new SysVideoFile();
+        fileUpdate.setId(videoFileId);
+        fileUpdate.setFilePath(duplicate.getFilePath());
+        fileUpdate.setFileType(duplicate.getFileType());
+        fileUpdate.setResolution(duplicate.getResolution());
+        fileUpdate.setBitrate(duplicate.getBitrate());
+        fileUpdate.setBitrateLadder(duplicate.getBitrateLadder());
+        fileUpdate.setStoryboardUrl(duplicate.getStoryboardUrl());
+        fileUpdate.setDuration(duplicate.getDuration());
+        fileUpdate.setStorageType(duplicate.getStorageType());
+        fileUpdate.setStatus(VideoStatus.PUBLISHED.getCode());
+        videoFileMapper.updateById(fileUpdate);
+    }
+
+    private void handleRecord(MapRecord<String, Object, Object> record, String consumerId) {
+        Map<Object, Object> value = record.getValue();
+        if (!RedisStreamConfig.EventType.TRANSCODE_COMPLETE.equals(value.get("eventType"))) {
+            acknowledge(record.getId());
+            return;
+        }
+        Long videoId = Long.valueOf((String) value.get("videoId"));
+        Long videoFileId = Long.valueOf((String) value.get("videoFileId"));
+        String outputDir = (String) value.get("outputDir");
+        String targetDirectory = (String) value.get("targetDirectory");
+        try {
+            Runnable heartbeat = () -> touchRecord(record.getId(), consumerId);
+            if (Boolean.parseBoolean((String) value.get("backfill"))) {
+                processBackfillUpload(videoId, videoFileId, outputDir, targetDirectory, value, heartbeat);
+            } else {
+                processUpload(videoId, videoFileId, outputDir, targetDirectory, heartbeat);
             }
+            acknowledge(record.getId());
         } catch (Exception e) {
-            log.error("Fatal error in message handler: ", e);
+            // Left pending: reclaimed after the idle timeout, sending only the files still missing
+            log.error("Error uploading video file {} (record {}), will retry: ", videoFileId, record.getId(), e);
         }
     }
 
     /**
      * Actual logic to upload the transcoded output to OSS
+     *
+     * @param heartbeat keeps the stream entry from being reclaimed while the upload runs
      */
-    private void processUpload(Long videoId, Long videoFileId, String sourceDirectory, String targetDirectory) {
-        try {
-            // Check the video file from DB
-            SysVideoFile videoFile = videoFileMapper.selectById(videoFileId);
-            if (videoFile == null) {
-                log.error("Video file not found: {}", videoFileId);
-                return;
-            }
+    private void processUpload(Long videoId, Long videoFileId, String sourceDirectory, String targetDirectory,
+                               Runnable heartbeat) throws IOException {
+        // Check the video file from DB
+        SysVideoFile videoFile = videoFileMapper.selectById(videoFileId);
+        if (videoFile == null) {
+            log.error("Video file not found: {}", videoFileId);
+            return;
+        }
 
-            // Only proceed if status is PENDING_UPLOAD
-            if (!Objects.equals(videoFile.getStatus(), VideoStatus.PENDING_UPLOAD.getCode())) {
-                log.info("Skip uploading for video file {}. Current status: {}",
-                    videoFileId, videoFile.getStatus());
-                return;
-            }
+        // Only proceed if status is PENDING_UPLOAD, or UPLOADING for a retried or reclaimed upload,
+        // or PUBLISHED with its first rendition while the rest of the output is still local
+        boolean published = Objects.equals(videoFile.getStatus(), VideoStatus.PUBLISHED.getCode())
+            && Files.isDirectory(Path.of(sourceDirectory));
+        if (!Objects.equals(videoFile.getStatus(), VideoStatus.PENDING_UPLOAD.getCode())
+            && !Objects.equals(videoFile.getStatus(), VideoStatus.UPLOADING.getCode()) && !published) {
+            log.info("Skip uploading for video file {}. Current status: {}",
+                videoFileId, videoFile.getStatus());
+            return;
+        }
 
-            // Check the video
-            SysVideo video = videoMapper.selectById(videoId);
-            if (video == null) {
-                log.error("Video not found: {}", videoId);
-                return;
-            }
+        // Check the video
+        SysVideo video = videoMapper.selectById(videoId);
+        if (video == null) {
+            log.error("Video not found: {}", videoId);
+            return;
+        }
 
-            // Update DB status to "uploading"
+        // Update DB status to "uploading"; a published video stays playable meanwhile
+        if (!published) {
             updateStatusToUploading(videoId, videoFileId);
+        }
 
-            // Get an OssClient for the upload
-            OssClient ossClient = OssFactory.instance();
+        // Get an OssClient for the upload
+        OssClient ossClient = OssFactory.instance();
 
-            // Upload the directory to the object storage
-            log.info("Starting upload of directory {} to target path {}", sourceDirectory, targetDirectory);
-            String videoS3Url = ossClient.uploadDirectoryTransferAndWait(sourceDirectory, targetDirectory);
-            log.info("Upload complete. Video S3 URL: {}", videoS3Url);
+        // Upload what is not in OSS yet; segments streamed during transcoding or sent by an earlier attempt are skipped
+        log.info("Starting upload of directory {} to target path {}", sourceDirectory, targetDirectory);
+        Set<String> uploadedKeys = segmentUploadService.getUploadedKeys(videoFileId);
+        String videoS3Url = uploadRemainingFiles(ossClient, videoFileId, sourceDirectory, targetDirectory, uploadedKeys,
+            heartbeat, file -> true);
+        log.info("Upload complete. Video S3 URL: {}", videoS3Url);
 
-            // Upload the thumbnail
-            String thumbnailPath = video.getThumbnailUrl();
-            String suffix = StringUtils.substring(thumbnailPath, thumbnailPath.lastIndexOf(".") + 1);
-            String objectName = "covers/" + StringUtils.substring(thumbnailPath, thumbnailPath.lastIndexOf(File.separator) + 1);
+        // Upload the thumbnail (the local copy is removed once uploaded)
+        String thumbnailUrl = uploadThumbnailOnce(ossClient, videoFileId, video.getThumbnailUrl(), uploadedKeys);
 
-            UploadResult uploadResult = ossClient.upload(Path.of(thumbnailPath), objectName, null, suffix);
-            log.info("Thumbnail upload complete. S3 URL: {}", uploadResult.getUrl());
+        // Update to success in DB
+        updateStatusToSuccess(videoId, videoFileId, videoS3Url, thumbnailUrl,
+            getStoryboardUrl(ossClient, sourceDirectory, targetDirectory));
 
-            // Update to success in DB
-            updateStatusToSuccess(videoId, videoFileId, videoS3Url, uploadResult.getUrl());
+        // Clean up local transcoded files
+        FileUtils.del(sourceDirectory);
+        segmentUploadService.clearUploadedKeys(videoFileId);
+    }
 
-            // Clean up local transcoded files
+    /**
+     * Upload the re-transcoded output of a published file, then point the file at it in one update.
+     * The update only applies while the file is still published, and carries the new renditions with it,
+     * so readers see either the old output or the complete new one.
+     */
+    private void processBackfillUpload(Long videoId, Long videoFileId, String sourceDirectory, String targetDirectory,
+                                       Map<Object, Object> event, Runnable heartbeat) throws IOException {
+        SysVideoFile videoFile = videoFileMapper.selectById(videoFileId);
+        if (videoFile == null || !Objects.equals(videoFile.getStatus(), VideoStatus.PUBLISHED.getCode())
+            || !Files.isDirectory(Path.of(sourceDirectory))) {
+            log.info("Skip backfill upload of video file {}, it is no longer published or was already swapped", videoFileId);
             FileUtils.del(sourceDirectory);
+            return;
+        }
+
+        OssClient ossClient = OssFactory.instance();
+        log.info("Starting backfill upload of directory {} to target path {}", sourceDirectory, targetDirectory);
+        Set<String> uploadedKeys = segmentUploadService.getUploadedKeys(videoFileId);
+        String videoS3Url = uploadRemainingFiles(ossClient, videoFileId, sourceDirectory, targetDirectory, uploadedKeys,
+            heartbeat, file -> true);
+
+        SysVideoFile swapped = new SysVideoFile();
+        swapped.setFilePath(videoS3Url);
+        swapped.setResolution((String) event.get("resolution"));
+        swapped.setBitrateLadder((String) event.get("bitrateLadder"));
+        String bitrate = (String) event.get("bitrate");
+        swapped.setBitrate(StringUtils.isNumeric(bitrate) ? Integer.valueOf(bitrate) : null);
+        swapped.setStoryboardUrl(getStoryboardUrl(ossClient, sourceDirectory, targetDirectory));
+        int updated = videoFileMapper.update(swapped, new LambdaUpdateWrapper<SysVideoFile>()
+            .eq(SysVideoFile::getId, videoFileId)
+            .eq(SysVideoFile::getStatus, VideoStatus.PUBLISHED.getCode()));
+        log.info("Backfill of video {} file {} {}: {} (was {})", videoId, videoFileId,
+            updated > 0 ? "swapped in" : "discarded, file no longer published", videoS3Url, videoFile.getFilePath());
+
+        FileUtils.del(sourceDirectory);
+        segmentUploadService.clearUploadedKeys(videoFileId);
+    }
+
+    /**
+     * Upload a thumbnail unless the manifest shows an earlier attempt already did (the local copy is removed once uploaded)
+     *
+     * @return thumbnail URL
+     */
+    private String uploadThumbnailOnce(OssClient ossClient, Long videoFileId, String thumbnailPath, Set<String> uploadedKeys) {
+        String thumbnailKey = getThumbnailObjectName(thumbnailPath);
+        if (uploadedKeys.contains(thumbnailKey)) {
+            return ossClient.getUrl() + StringUtils.SLASH + thumbnailKey;
+        }
+        String thumbnailUrl = uploadThumbnail(thumbnailPath);
+        segmentUploadService.markUploaded(videoFileId, thumbnailKey);
+        return thumbnailUrl;
+    }
+
+    /**
+     * Upload the files of a transcoded directory that are not yet in OSS, recording each in the manifest.
+     * Media files and storyboard sheets go first, playlists and the storyboard track after them,
+     * master playlist at the very end, so nothing references an object that is not stored yet.
+     * The master playlist is never recorded: it is rewritten as renditions are added, and always sent again.
+     *
+     * @param include files of the directory to consider
+     * @return Master M3U8 URL
+     */
+    private String uploadRemainingFiles(OssClient ossClient, Long videoFileId, String sourceDirectory, String targetDirectory,
+                                        Set<String> uploadedKeys, Runnable heartbeat, Predicate<Path> include) throws IOException {
+        Path root = Path.of(sourceDirectory);
+        Map<Integer, List<Path>> phases;
+        try (Stream<Path> walk = Files.walk(root)) {
+            phases = walk.filter(Files::isRegularFile).filter(include)
+                .collect(Collectors.groupingBy(this::uploadOrder, TreeMap::new, Collectors.toList()));
+        }
+        int uploaded = 0;
+        for (List<Path> files : phases.values()) {
+            List<CompletableFuture<UploadResult>> futures = new ArrayList<>();
+            Semaphore inFlight = new Semaphore(Math.max(1, uploadConfig.getFileConcurrency()));
+            long lastHeartbeat = System.currentTimeMillis();
+            for (Path file : files) {
+                String objectKey = targetDirectory + "/" + root.relativize(file).toString().replace(File.separatorChar, '/');
+                if (uploadedKeys.contains(objectKey)) {
+                    continue;
+                }
+                inFlight.acquireUninterruptibly();
+                futures.add(ossClient.uploadFileTransferAsync(file, objectKey, VideoSegmentUploadServiceImpl.getContentType(objectKey))
+                    .whenComplete((result, error) -> {
+                        inFlight.release();
+                        if (error == null && !isMasterPlaylist(file)) {
+                            segmentUploadService.markUploaded(videoFileId, objectKey);
+                        }
+                    }));
+                uploaded++;
+                if (System.currentTimeMillis() - lastHeartbeat > uploadConfig.getReclaimIdle() * 1000 / 3) {
+                    heartbeat.run();
+                    lastHeartbeat = System.currentTimeMillis();
+                }
+            }
+            // A failed file fails the attempt; the files that made it stay in the manifest
+            CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new)).join();
+        }
+        log.info("Uploaded {} files, {} were already in OSS", uploaded, uploadedKeys.size());
+        return ossClient.getUrl() + StringUtils.SLASH + targetDirectory + StringUtils.SLASH + MASTER_PLAYLIST;
+    }
+
+    private int uploadOrder(Path file) {
+        if (isMasterPlaylist(file)) {
+            return 2;
+        }
+        String name = file.getFileName().toString();
+        return name.endsWith(".m3u8") || name.endsWith(".vtt") ? 1 : 0;
+    }
+
+    /**
+     * URL of the uploaded storyboard track, or null when the transcode wrote none
+     */
+    private String getStoryboardUrl(OssClient ossClient, String sourceDirectory, String targetDirectory) {
+        if (!Files.isRegularFile(Path.of(sourceDirectory, STORYBOARD_TRACK))) {
+            return null;
+        }
+        return ossClient.getUrl() + StringUtils.SLASH + targetDirectory + StringUtils.SLASH + STORYBOARD_TRACK;
+    }
+
+    private boolean isMasterPlaylist(Path file) {
+        return MASTER_PLAYLIST.equals(file.getFileName().toString());
+    }
+
+    private String getThumbnailObjectName(String thumbnailPath) {
+        return "covers/" + StringUtils.substring(thumbnailPath, thumbnailPath.lastIndexOf(File.separator) + 1);
+    }
 
+    /**
+     * Block for the next event not yet delivered to the group
+     */
+    @SuppressWarnings("unchecked") // read takes the stream offsets as generic varargs
+    private List<MapRecord<String, Object, Object>> readNewRecords(String consumerId) {
+        return redisTemplate.opsForStream().read(
+            Consumer.from(RedisStreamConfig.CONSUMER_GROUP, consumerId),
+            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(5)),
+            StreamOffset.create(RedisStreamConfig.VIDEO_PROCESS_STREAM, ReadOffset.lastConsumed())
+        );
+    }
+
+    /**
+     * Claim pending events idle for longer than the reclaim timeout (their consumer died, or their upload failed).
+     * Checked by one worker at a time, at most every half timeout.
+     * The stream is not trimmed: acknowledged events are deleted, so every entry left is outstanding work.
+     */
+    private List<MapRecord<String, Object, Object>> reclaimIdleRecords(String consumerId) {
+        Duration reclaimIdle = Duration.ofSeconds(uploadConfig.getReclaimIdle());
+        long now = System.currentTimeMillis();
+        long last = lastReclaimTime.get();
+        if (now - last < reclaimIdle.toMillis() / 2 || !lastReclaimTime.compareAndSet(last, now)) {
+            return Collections.emptyList();
+        }
+
+        PendingMessages pending = redisTemplate.opsForStream().pending(
+            RedisStreamConfig.VIDEO_PROCESS_STREAM, RedisStreamConfig.CONSUMER_GROUP, Range.unbounded(), RECLAIM_BATCH_SIZE);
+        List<MapRecord<String, Object, Object>> reclaimed = new ArrayList<>();
+        for (PendingMessage pendingMessage : pending) {
+            if (pendingMessage.getElapsedTimeSinceLastDelivery().compareTo(reclaimIdle) < 0) {
+                continue;
+            }
+            List<MapRecord<String, Object, Object>> claimed = redisTemplate.opsForStream().claim(
+                RedisStreamConfig.VIDEO_PROCESS_STREAM, RedisStreamConfig.CONSUMER_GROUP, consumerId,
+                XClaimOptions.minIdle(reclaimIdle).ids(pendingMessage.getId()));
+            if (claimed == null || claimed.isEmpty()) {
+                // Claimed by another node first
+                continue;
+            }
+            MapRecord<String, Object, Object> record = claimed.get(0);
+            log.warn("Reclaimed upload event {} from {} (delivery {})",
+                pendingMessage.getIdAsString(), pendingMessage.getConsumerName(), pendingMessage.getTotalDeliveryCount() + 1);
+
+            if (pendingMessage.getTotalDeliveryCount() >= uploadConfig.getMaxDeliveries()) {
+                Object videoId = record.getValue().get("videoId");
+                Object videoFileId = record.getValue().get("videoFileId");
+                log.error("Upload of video file {} failed {} times, marking as failed", videoFileId, uploadConfig.getMaxDeliveries());
+                if (videoId != null && videoFileId != null) {
+                    updateStatusToFailed(Long.valueOf((String) videoId), Long.valueOf((String) videoFileId));
+                }
+                acknowledge(record.getId());
+                continue;
+            }
+            reclaimed.add(record);
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Claiming our own pending entry resets its idle time, keeping other workers from reclaiming it
+     */
+    private void touchRecord(RecordId recordId, String consumerId) {
+        try {
+            redisTemplate.opsForStream().claim(
+                RedisStreamConfig.VIDEO_PROCESS_STREAM, RedisStreamConfig.CONSUMER_GROUP, consumerId,
+                XClaimOptions.minIdle(Duration.ZERO).ids(recordId));
         } catch (Exception e) {
-            log.error("Error during processUpload: ", e);
-            // Mark DB status as failed
-            updateStatusToFailed(videoId, videoFileId);
+            log.warn("Error refreshing upload event {}: {}", recordId, e.getMessage());
         }
     }
 
-    @Transactional(rollbackFor = Exception.class)
+    /**
+     * Acknowledge and delete the event, so the stream only holds outstanding uploads
+     */
+    private void acknowledge(RecordId recordId) {
+        redisTemplate.opsForStream().acknowledge(
+            RedisStreamConfig.VIDEO_PROCESS_STREAM,
+            RedisStreamConfig.CONSUMER_GROUP,
+            recordId
+        );
+        redisTemplate.opsForStream().delete(RedisStreamConfig.VIDEO_PROCESS_STREAM, recordId);
+    }
+
     void updateStatusToUploading(Long videoId, Long videoFileId) {
         SysVideo video = new SysVideo();
         video.setId(videoId);
@@ -213,7 +544,7 @@ public class VideoUploadServiceImpl implements IVideoUploadService {
     }
 
     @Transactional(rollbackFor = Exception.class)
-    void updateStatusToSuccess(Long videoId, Long videoFileId, String s3Url, String thumbnailUrl) {
+    void updateStatusToSuccess(Long videoId, Long videoFileId, String s3Url, String thumbnailUrl, String storyboardUrl) {
         SysVideo video = new SysVideo();
         video.setId(videoId);
         video.setStatus(VideoStatus.PUBLISHED.getCode());
@@ -223,20 +554,26 @@ public class VideoUploadServiceImpl implements IVideoUploadService {
         SysVideoFile videoFile = new SysVideoFile();
         videoFile.setId(videoFileId);
         videoFile.setFilePath(s3Url);
+        videoFile.setStoryboardUrl(storyboardUrl);
         videoFile.setStatus(VideoStatus.PUBLISHED.getCode());
         videoFileMapper.updateById(videoFile);
     }
 
+    /**
+     * A video already published with its first rendition stays published
+     */
     @Transactional(rollbackFor = Exception.class)
     void updateStatusToFailed(Long videoId, Long videoFileId) {
         SysVideo video = new SysVideo();
-        video.setId(videoId);
         video.setStatus(VideoStatus.UPLOAD_FAILED.getCode());
-        videoMapper.updateById(video);
+        videoMapper.update(video, new LambdaUpdateWrapper<SysVideo>()
+            .eq(SysVideo::getId, videoId)
+            .ne(SysVideo::getStatus, VideoStatus.PUBLISHED.getCode()));
 
         SysVideoFile videoFile = new SysVideoFile();
-        videoFile.setId(videoFileId);
         videoFile.setStatus(VideoStatus.UPLOAD_FAILED.getCode());
-        videoFileMapper.updateById(videoFile);
+        videoFileMapper.update(videoFile, new LambdaUpdateWrapper<SysVideoFile>()
+            .eq(SysVideoFile::getId, videoFileId)
+            .ne(SysVideoFile::getStatus, VideoStatus.PUBLISHED.getCode()));
     }
 }
@@ -1,27 +1,56 @@
 package org.dromara.video.service.impl;
 
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.HashUtil;
 import cn.hutool.core.util.IdUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.common.core.exception.ServiceException;
+import org.dromara.common.core.utils.ServletUtils;
+import org.dromara.common.core.utils.StringUtils;
+import org.dromara.common.satoken.utils.LoginHelper;
 import org.dromara.common.redis.utils.RedisUtils;
+import org.dromara.video.config.VideoViewCountConfig;
 import org.dromara.video.domain.entity.SysVideo;
 import org.dromara.video.domain.message.VideoViewMessage;
 import org.dromara.video.mapper.SysVideoMapper;
 import org.dromara.video.service.IVideoViewCountService;
+import org.dromara.video.utils.ViewCountAccumulator;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RHyperLogLog;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
 import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.kafka.support.SendResult;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.Duration;
-import java.util.HashMap;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -36,6 +65,8 @@ public class VideoViewCountServiceImpl implements IVideoViewCountService {
     private final SysVideoMapper videoMapper;
     private final KafkaTemplate<String, Object> kafkaTemplate;
     private final RedissonClient redissonClient;
+    private final VideoViewCountConfig videoViewCountConfig;
+    private final MeterRegistry meterRegistry;
 
     /**
      * Redis中视频播放量的key前缀
@@ -47,20 +78,236 @@ public class VideoViewCountServiceImpl implements IVideoViewCountService {
      */
     private static final String VIDEO_VIEW_LOCK_KEY = "video:view:lock:";
 
+    /**
+     * 每日独立观众 HyperLogLog 的key前缀 (video:view:unique:<yyyyMMdd>:<videoId>)
+     */
+    private static final String VIDEO_VIEW_UNIQUE_KEY = "video:view:unique:";
+
+    /**
+     * 判重布隆过滤器的key前缀, 每个窗口一个
+     */
+    private static final String VIDEO_VIEW_SEEN_KEY = "video:view:seen:";
+
+    /**
+     * 匿名观众 Cookie 名称与有效期
+     */
+    private static final String VIEWER_COOKIE = "vrs_viewer";
+    private static final int VIEWER_COOKIE_MAX_AGE = (int) Duration.ofDays(365).toSeconds();
+
     /**
      * Kafka主题
      */
     private static final String KAFKA_TOPIC = "video-view-count";
 
     /**
-     * 内存中的播放量增量 - 使用synchronized保证线程安全
+     * 内存中的播放量增量 - 无锁分段累加, 消费线程与定时刷库互不阻塞
+     */
+    private final ViewCountAccumulator pendingViewCounts = new ViewCountAccumulator();
+
+    /**
+     * 本实例当前聚合窗口内的播放量, 每个窗口发送一条批量消息
+     */
+    private final ViewCountAccumulator windowViewCounts = new ViewCountAccumulator();
+
+    /**
+     * 生产实例ID, 与窗口序号一起作为消费端的去重水位
+     */
+    private final String producerId = IdUtil.fastSimpleUUID();
+
+    /**
+     * 最近一个窗口序号
+     */
+    private long windowSeq;
+
+    /**
+     * 发送失败待重发的窗口消息, 重发成功前不发送新窗口, 保证同一实例的窗口序号按序到达
+     */
+    private VideoViewMessage unsentWindow;
+
+    /**
+     * 异步记录播放量的线程池, 队列有界, 队列满时丢弃本次计数
+     */
+    private ThreadPoolExecutor recordExecutor;
+    private Counter suppressedViews;
+
+    /**
+     * 本实例已初始化过的最近一个判重窗口, 同一窗口内不再重复 tryInit
+     */
+    private volatile long initializedSeenWindow = -1;
+
+    /**
+     * 本地缓存的独立观众数, 过期后读取仍返回旧值并在后台刷新, 详情接口不等待 Redis
+     */
+    private LoadingCache<Long, Long> uniqueViewCounts;
+    private ExecutorService uniqueCountExecutor;
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, videoViewCountConfig.getRecordThreads());
+        Counter dropped = meterRegistry.counter("video.view.record.dropped");
+        recordExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, videoViewCountConfig.getRecordQueueCapacity())),
+            ThreadUtil.newNamedThreadFactory("view-record-", true),
+            (task, executor) -> dropped.increment());
+        meterRegistry.gauge("video.view.record.queue.size", recordExecutor.getQueue(), BlockingQueue::size);
+        suppressedViews = meterRegistry.counter("video.view.record.suppressed");
+
+        uniqueCountExecutor = Executors.newSingleThreadExecutor(ThreadUtil.newNamedThreadFactory("view-unique-", true));
+        uniqueViewCounts = Caffeine.newBuilder()
+            .maximumSize(Math.max(1, videoViewCountConfig.getUniqueCacheSize()))
+            .refreshAfterWrite(Duration.ofSeconds(Math.max(1, videoViewCountConfig.getUniqueCacheTtl())))
+            .expireAfterAccess(Duration.ofSeconds(Math.max(1, videoViewCountConfig.getUniqueCacheTtl()) * 10))
+            .executor(uniqueCountExecutor)
+            .build(this::countUniqueViewers);
+    }
+
+    @Override
+    public void recordView(Long videoId, String viewerId) {
+        try {
+            recordExecutor.execute(() -> {
+                try {
+                    if (viewerId != null && !recordViewer(videoId, viewerId)) {
+                        suppressedViews.increment();
+                        return;
+                    }
+                    increaseViewCount(videoId);
+                } catch (Exception e) {
+                    log.warn("异步记录视频播放量失败：videoId={}", videoId);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("提交视频播放量记录任务失败：videoId={}", videoId, e);
+        }
+    }
+
+    /**
+     * 已登录用户按用户ID识别; 匿名观众按 IP 与 UA 指纹识别, 首次访问的指纹签名后写入 Cookie, 之后换 IP 仍是同一观众。
+     * 这只防止客户端冒用他人标识: 丢弃 Cookie 并不断更换 UA 的客户端每次都得到新指纹, 仍会抬高独立观众数并绕过判重,
+     * 匿名计数的可信度止于此
+     */
+    @Override
+    public String resolveViewer(HttpServletRequest request, HttpServletResponse response) {
+        if (LoginHelper.isLogin()) {
+            return "u:" + LoginHelper.getUserId();
+        }
+        String secret = videoViewCountConfig.getViewerSecret();
+        if (StringUtils.isBlank(secret)) {
+            return "v:" + fingerprint(request);
+        }
+        String cookieViewer = verifyViewerCookie(request, secret);
+        if (cookieViewer != null) {
+            return "v:" + cookieViewer;
+        }
+        String viewer = fingerprint(request);
+        Cookie cookie = new Cookie(VIEWER_COOKIE, viewer + "." + sign(viewer, secret));
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge(VIEWER_COOKIE_MAX_AGE);
+        cookie.setAttribute("SameSite", "Lax");
+        response.addCookie(cookie);
+        return "v:" + viewer;
+    }
+
+    /**
+     * 校验观众 Cookie 的签名
+     *
+     * @return Cookie 中的观众指纹, 没有 Cookie 或签名不符时为 null
+     */
+    private static String verifyViewerCookie(HttpServletRequest request, String secret) {
+        if (request.getCookies() == null) {
+            return null;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (!VIEWER_COOKIE.equals(cookie.getName()) || cookie.getValue() == null) {
+                continue;
+            }
+            int dot = cookie.getValue().indexOf('.');
+            if (dot <= 0) {
+                return null;
+            }
+            String viewer = cookie.getValue().substring(0, dot);
+            String signature = cookie.getValue().substring(dot + 1);
+            return MessageDigest.isEqual(sign(viewer, secret).getBytes(StandardCharsets.UTF_8),
+                signature.getBytes(StandardCharsets.UTF_8)) ? viewer : null;
+        }
+        return null;
+    }
+
+    private static String fingerprint(HttpServletRequest request) {
+        String fingerprint = ServletUtils.getClientIP(request) + "|" + request.getHeader("User-Agent");
+        return Long.toHexString(HashUtil.murmur64(fingerprint.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String sign(String viewer, String secret) {
+        return SecureUtil.hmacSha256(secret.getBytes(StandardCharsets.UTF_8)).digestHex(viewer);
+    }
+
+    /**
+     * 计入当天的独立观众, 并判断是否为判重窗口内的首次播放
+     * (视频, 观众) 写入当前窗口的布隆过滤器并查上一窗口; 窗口内写入量不超过预期时误判率不超过配置值,
+     * 误判只会把首次播放当作重复播放少计一次, 不会多计
+     *
+     * @return 首次播放返回 true, 重复播放返回 false
      */
-    private static final Map<Long, Long> VIEW_COUNT_MAP = new HashMap<>();
+    private boolean recordViewer(Long videoId, String viewerId) {
+        LocalDate today = LocalDate.now();
+        RHyperLogLog<String> viewers = redissonClient.getHyperLogLog(uniqueViewerKey(videoId, today), StringCodec.INSTANCE);
+        if (viewers.add(viewerId)) {
+            // 寄存器有变化时刷新过期时间, 新建的 key 第一次写入必然有变化
+            viewers.expire(Duration.ofDays(videoViewCountConfig.getUniqueDays() + 1L));
+        }
+
+        long windowMillis = TimeUnit.MINUTES.toMillis(Math.max(1, videoViewCountConfig.getSeenWindow()));
+        long window = System.currentTimeMillis() / windowMillis;
+        String member = videoId + ":" + viewerId;
+        RBloomFilter<String> current = redissonClient.getBloomFilter(VIDEO_VIEW_SEEN_KEY + window, StringCodec.INSTANCE);
+        RBloomFilter<String> previous = redissonClient.getBloomFilter(VIDEO_VIEW_SEEN_KEY + (window - 1), StringCodec.INSTANCE);
+        if (initializedSeenWindow != window) {
+            // 各实例都尝试初始化, 只有第一个生效; 上一窗口没有播放时也补建一个空过滤器, 查询时不必判断是否存在
+            initSeenFilter(current, windowMillis * 2);
+            initSeenFilter(previous, windowMillis);
+            initializedSeenWindow = window;
+        }
+        return current.add(member) && !previous.contains(member);
+    }
+
+    private void initSeenFilter(RBloomFilter<String> filter, long ttlMillis) {
+        if (filter.tryInit(videoViewCountConfig.getSeenExpectedViews(), videoViewCountConfig.getSeenFalseProbability())) {
+            filter.expire(Duration.ofMillis(ttlMillis));
+        }
+    }
+
+    @Override
+    public Long getUniqueViewCount(Long videoId) {
+        Long count = uniqueViewCounts.getIfPresent(videoId);
+        if (count == null) {
+            // 未缓存: 本次不返回, 交给后台线程加载
+            uniqueViewCounts.refresh(videoId);
+        }
+        return count;
+    }
 
     /**
-     * 用于同步的对象锁
+     * 合并最近若干天的 HyperLogLog 估算独立观众数, Redis 不可用时为 null (不缓存, 下次读取再加载)
      */
-    private final Object mapLock = new Object();
+    private Long countUniqueViewers(Long videoId) {
+        try {
+            LocalDate today = LocalDate.now();
+            String[] previousDays = new String[Math.max(0, videoViewCountConfig.getUniqueDays() - 1)];
+            for (int i = 0; i < previousDays.length; i++) {
+                previousDays[i] = uniqueViewerKey(videoId, today.minusDays(i + 1L));
+            }
+            RHyperLogLog<String> viewers = redissonClient.getHyperLogLog(uniqueViewerKey(videoId, today), StringCodec.INSTANCE);
+            return previousDays.length == 0 ? viewers.count() : viewers.countWith(previousDays);
+        } catch (Exception e) {
+            log.warn("获取独立观众数失败：videoId={}", videoId, e);
+            return null;
+        }
+    }
+
+    private static String uniqueViewerKey(Long videoId, LocalDate day) {
+        return VIDEO_VIEW_UNIQUE_KEY + day.format(DateTimeFormatter.BASIC_ISO_DATE) + ":" + videoId;
+    }
 
     @Override
     public void increaseViewCount(Long videoId) {
@@ -115,20 +362,8 @@ public class VideoViewCountServiceImpl implements IVideoViewCountService {
             // 增加Redis中的播放量
             RedisUtils.incrAtomicValue(redisKey);
 
-            // 生成唯一消息ID
-            String messageId = IdUtil.fastSimpleUUID();
-            // 发送消息到Kafka
-            VideoViewMessage message = new VideoViewMessage(messageId, videoId, 1L);
-            CompletableFuture<SendResult<String, Object>> future = kafkaTemplate.send(KAFKA_TOPIC, messageId, message);
-
-            // 添加回调处理
-            future.whenComplete((result, ex) -> {
-                if (ex == null) {
-                    log.debug("发送视频播放量消息成功：{}", messageId);
-                } else {
-                    log.error("发送视频播放量消息失败：{}", messageId, ex);
-                }
-            });
+            // 计入当前聚合窗口, 由 flushViewWindow 按窗口批量发送到Kafka
+            windowViewCounts.add(videoId, 1L);
 
         } catch (Exception e) {
             log.error("增加视频播放量失败", e);
@@ -136,64 +371,128 @@ public class VideoViewCountServiceImpl implements IVideoViewCountService {
         }
     }
 
+    /**
+     * 定时任务：每个聚合窗口将本实例的播放量增量作为一条消息发送到Kafka
+     * 消息以实例ID为key, 同一实例的窗口按序号顺序进入同一分区; 发送失败的窗口原样重发, 不换序号, 消费端按水位去重
+     */
+    @Scheduled(fixedRateString = "${video.view-count.window:1000}")
+    public synchronized void flushViewWindow() {
+        if (unsentWindow != null) {
+            if (!sendWindow(unsentWindow)) {
+                return;
+            }
+            unsentWindow = null;
+        }
+        Map<Long, Long> counts = windowViewCounts.snapshotAndReset();
+        if (counts.isEmpty()) {
+            return;
+        }
+        VideoViewMessage message = new VideoViewMessage(producerId, ++windowSeq, counts);
+        if (!sendWindow(message)) {
+            unsentWindow = message;
+        }
+    }
+
+    /**
+     * 停机前处理完已排队的播放量记录, 再发送最后一个窗口
+     */
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        if (uniqueCountExecutor != null) {
+            uniqueCountExecutor.shutdownNow();
+        }
+        if (recordExecutor != null) {
+            recordExecutor.shutdown();
+            if (!recordExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("停机时仍有{}条播放量记录未处理", recordExecutor.shutdownNow().size());
+            }
+        }
+        flushViewWindow();
+        if (unsentWindow != null) {
+            log.warn("停机时窗口消息未发送成功，丢弃：producerId={}, windowSeq={}, videos={}",
+                producerId, unsentWindow.getWindowSeq(), unsentWindow.getCounts().size());
+        }
+    }
+
+    private boolean sendWindow(VideoViewMessage message) {
+        try {
+            kafkaTemplate.send(KAFKA_TOPIC, producerId, message)
+                .get(videoViewCountConfig.getSendTimeout(), TimeUnit.SECONDS);
+            log.debug("发送视频播放量窗口消息成功：producerId={}, windowSeq={}, videos={}",
+                producerId, message.getWindowSeq(), message.getCounts().size());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.error("发送视频播放量窗口消息失败：producerId={}, windowSeq={}", producerId, message.getWindowSeq(), e);
+            return false;
+        }
+    }
+
     /**
      * 消费Kafka消息，更新内存中的播放量
-     * 使用synchronized保证线程安全
      */
     public void consumeViewCount(VideoViewMessage message, Acknowledgment ack) {
         try {
-            synchronized (mapLock) {
-                // 直接更新计数
-                VIEW_COUNT_MAP.merge(message.getVideoId(), message.getIncrement(), Long::sum);
-                log.debug("更新视频播放量：videoId={}, increment={}", message.getVideoId(), message.getIncrement());
-            }
+            pendingViewCounts.addAll(message.getCounts());
+            log.debug("更新视频播放量：producerId={}, windowSeq={}, videos={}",
+                message.getProducerId(), message.getWindowSeq(), message.getCounts().size());
             // 消息处理成功后进行确认
             if (ack != null) {
                 ack.acknowledge();
-                log.debug("确认消费消息：messageId={}", message.getMessageId());
             }
         } catch (Exception e) {
-            log.error("处理视频播放量消息失败：messageId={}", message.getMessageId(), e);
+            log.error("处理视频播放量消息失败：producerId={}, windowSeq={}", message.getProducerId(), message.getWindowSeq(), e);
             throw e; // 抛出异常，让Kafka进行重试
         }
     }
 
     /**
      * 定时任务：每10秒将内存中的播放量写入数据库
-     * 使用synchronized保证线程安全
+     * 快照与清零是原子的, 写库失败的增量合并回累加器, 都不阻塞消费线程;
+     * 增量按视频ID升序分块, 每块一条 UPDATE, 各节点按相同顺序加行锁, 避免互相死锁
      */
     @Scheduled(fixedRate = 10000)
     public void syncViewCount2Db() {
-        Map<Long, Long> currentCounts;
-        synchronized (mapLock) {
-            if (VIEW_COUNT_MAP.isEmpty()) {
-                return;
+        Map<Long, Long> currentCounts = pendingViewCounts.snapshotAndReset();
+        if (currentCounts.isEmpty()) {
+            return;
+        }
+
+        Timer chunkTimer = meterRegistry.timer("video.view.flush.chunk");
+        int chunkSize = Math.max(1, videoViewCountConfig.getFlushChunkSize());
+        List<Map<Long, Long>> chunks = new ArrayList<>();
+        TreeMap<Long, Long> chunk = new TreeMap<>();
+        for (Map.Entry<Long, Long> entry : new TreeMap<>(currentCounts).entrySet()) {
+            chunk.put(entry.getKey(), entry.getValue());
+            if (chunk.size() == chunkSize) {
+                chunks.add(chunk);
+                chunk = new TreeMap<>();
             }
-            // 在同步块内复制和清空map
-            currentCounts = new HashMap<>(VIEW_COUNT_MAP);
-            VIEW_COUNT_MAP.clear();
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
         }
 
-        try {
-            // 使用批量更新SQL
-            boolean success = videoMapper.batchIncrementViewCounts(currentCounts) > 0;
-            if (success) {
-                log.debug("成功更新{}个视频的播放量", currentCounts.size());
-            } else {
-                log.warn("批量更新视频播放量失败");
-                // 更新失败，将计数加回map中
-                synchronized (mapLock) {
-                    currentCounts.forEach((videoId, increment) ->
-                        VIEW_COUNT_MAP.merge(videoId, increment, Long::sum));
+        long start = System.nanoTime();
+        int updated = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            long chunkStart = System.nanoTime();
+            try {
+                updated += videoMapper.batchIncrementViewCounts(chunks.get(i));
+                chunkTimer.record(System.nanoTime() - chunkStart, TimeUnit.NANOSECONDS);
+            } catch (Exception e) {
+                log.error("批量更新视频播放量失败：第{}/{}块", i + 1, chunks.size(), e);
+                // 写库失败，将本块及之后未写入的计数加回累加器，下次重试
+                for (int j = i; j < chunks.size(); j++) {
+                    pendingViewCounts.addAll(chunks.get(j));
                 }
-            }
-        } catch (Exception e) {
-            log.error("批量更新视频播放量失败", e);
-            // 如果批量更新失败，将所有计数加回map中
-            synchronized (mapLock) {
-                currentCounts.forEach((videoId, increment) ->
-                    VIEW_COUNT_MAP.merge(videoId, increment, Long::sum));
+                meterRegistry.counter("video.view.flush.failures").increment();
+                break;
             }
         }
+        meterRegistry.timer("video.view.flush").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        log.debug("成功更新{}个视频的播放量，共{}块", updated, chunks.size());
     }
 }
@@ -0,0 +1,338 @@
+package org.dromara.video.service.impl;
+
+import cn.hutool.core.collection.ListUtil;
+import cn.hutool.core.io.FileUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.common.core.utils.StringUtils;
+import org.dromara.common.ffmpeg.config.FFmpegConfig;
+import org.dromara.video.config.VideoStorageConfig;
+import org.dromara.video.config.VideoUploadConfig;
+import org.dromara.video.config.VideoWorkspaceConfig;
+import org.dromara.video.domain.entity.SysVideoFile;
+import org.dromara.video.domain.enums.VideoStatus;
+import org.dromara.video.mapper.SysVideoFileMapper;
+import org.dromara.video.service.IVideoWorkspaceService;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local Transcode Workspace Service Implementation
+ * Every entry directly under a workspace root is owned by a video file: output and chunk directories by their
+ * name (the video file ID), sources and thumbnails through a Redis registry written when the video is registered.
+ * The sweeper reclaims entries whose owner is gone or failed long ago, then evicts completed work
+ * (sources and thumbnails of published videos) least recently used first while usage is over quota.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class VideoWorkspaceServiceImpl implements IVideoWorkspaceService {
+
+    private final StringRedisTemplate redisTemplate;
+    private final SysVideoFileMapper videoFileMapper;
+    private final VideoWorkspaceConfig workspaceConfig;
+    private final VideoStorageConfig storageConfig;
+    private final VideoUploadConfig uploadConfig;
+    private final FFmpegConfig ffmpegConfig;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Local path -> "videoFileId:last used millis" of tracked sources and thumbnails
+     */
+    private static final String TRACKED_KEY = "video:workspace:tracked";
+
+    private static final String SOURCE_ROOT = "source";
+    private static final String COVER_ROOT = "cover";
+    private static final String UPLOAD_TEMP_ROOT = "upload-temp";
+    private static final String OUTPUT_ROOT = "output";
+    private static final String TRANSCODE_TEMP_ROOT = "transcode-temp";
+
+    /**
+     * Bytes used under each root as of the last sweep
+     */
+    private final Map<String, AtomicLong> usage = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (Map.Entry<String, Path> root : roots().entrySet()) {
+            AtomicLong bytes = new AtomicLong();
+            usage.put(root.getKey(), bytes);
+            Tags tags = Tags.of("root", root.getKey());
+            meterRegistry.gauge("video.workspace.usage.bytes", tags, bytes);
+            meterRegistry.gauge("video.workspace.free.bytes", tags, root.getValue().toFile(), File::getUsableSpace);
+        }
+        meterRegistry.gauge("video.workspace.quota.bytes", workspaceConfig, VideoWorkspaceConfig::getQuota);
+    }
+
+    @Override
+    public void track(Long videoFileId, String path) {
+        if (StringUtils.isEmpty(path)) {
+            return;
+        }
+        redisTemplate.opsForHash().put(TRACKED_KEY, normalize(path).toString(), videoFileId + ":" + System.currentTimeMillis());
+    }
+
+    @Override
+    public void touch(String path) {
+        if (StringUtils.isEmpty(path)) {
+            return;
+        }
+        String key = normalize(path).toString();
+        Object value = redisTemplate.opsForHash().get(TRACKED_KEY, key);
+        if (value != null) {
+            redisTemplate.opsForHash().put(TRACKED_KEY, key, value.toString().split(":")[0] + ":" + System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${video.workspace.sweep-interval:600000}", initialDelay = 60000)
+    public void sweep() {
+        if (!workspaceConfig.isEnabled()) {
+            return;
+        }
+        Map<String, Path> roots = roots();
+        Map<Object, Object> tracked = redisTemplate.opsForHash().entries(TRACKED_KEY);
+        List<WorkspaceEntry> entries = new ArrayList<>();
+        for (Map.Entry<String, Path> root : roots.entrySet()) {
+            entries.addAll(scan(root.getKey(), root.getValue(), roots.values(), tracked));
+        }
+
+        // Registry entries whose file is already gone
+        for (Object path : tracked.keySet()) {
+            if (!Files.exists(Paths.get(path.toString()))) {
+                redisTemplate.opsForHash().delete(TRACKED_KEY, path);
+            }
+        }
+
+        Map<Long, Integer> statuses = loadStatuses(entries);
+        long now = System.currentTimeMillis();
+        List<WorkspaceEntry> remaining = new ArrayList<>();
+        List<WorkspaceEntry> completed = new ArrayList<>();
+        for (WorkspaceEntry entry : entries) {
+            Integer status = entry.videoFileId != null ? statuses.get(entry.videoFileId) : null;
+            long idle = now - entry.lastUsed;
+            if (status == null) {
+                // Untracked, or owned by a row that no longer exists (or was never committed)
+                if (idle >= orphanAge(entry.root)) {
+                    reclaim(entry, "orphan");
+                    continue;
+                }
+            } else if (isFailed(status)) {
+                if (idle >= TimeUnit.HOURS.toMillis(workspaceConfig.getFailedRetention())) {
+                    reclaim(entry, "failed");
+                    continue;
+                }
+            } else if (isFinished(status)) {
+                // A published file's output may still be uploading its higher renditions, so it only goes once idle
+                if (OUTPUT_ROOT.equals(entry.root)) {
+                    if (idle >= orphanAge(entry.root)) {
+                        reclaim(entry, "orphan");
+                        continue;
+                    }
+                } else {
+                    completed.add(entry);
+                }
+            }
+            remaining.add(entry);
+        }
+
+        long total = remaining.stream().mapToLong(entry -> entry.size).sum();
+        if (total > workspaceConfig.getQuota()) {
+            completed.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+            for (WorkspaceEntry entry : completed) {
+                if (total <= workspaceConfig.getQuota()) {
+                    break;
+                }
+                reclaim(entry, "evicted");
+                remaining.remove(entry);
+                total -= entry.size;
+            }
+            if (total > workspaceConfig.getQuota()) {
+                log.warn("Workspace uses {} bytes, over the {} byte quota with no completed work left to evict",
+                    total, workspaceConfig.getQuota());
+            }
+        }
+
+        Map<String, Long> byRoot = new HashMap<>();
+        for (WorkspaceEntry entry : remaining) {
+            byRoot.merge(entry.root, entry.size, Long::sum);
+        }
+        usage.forEach((root, bytes) -> bytes.set(byRoot.getOrDefault(root, 0L)));
+    }
+
+    /**
+     * Workspace roots by name; a path configured under several names is swept once
+     */
+    private Map<String, Path> roots() {
+        Map<String, String> configured = new LinkedHashMap<>();
+        configured.put(SOURCE_ROOT, storageConfig.getVideoPath());
+        configured.put(COVER_ROOT, storageConfig.getCoverPath());
+        configured.put(UPLOAD_TEMP_ROOT, storageConfig.getTempPath());
+        configured.put(OUTPUT_ROOT, ffmpegConfig.getOutputPath());
+        configured.put(TRANSCODE_TEMP_ROOT, ffmpegConfig.getTempPath());
+        Map<String, Path> roots = new LinkedHashMap<>();
+        for (Map.Entry<String, String> root : configured.entrySet()) {
+            if (StringUtils.isNotEmpty(root.getValue()) && !roots.containsValue(normalize(root.getValue()))) {
+                roots.put(root.getKey(), normalize(root.getValue()));
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Entries directly under a root, skipping any that hold another root
+     */
+    private List<WorkspaceEntry> scan(String name, Path root, Iterable<Path> roots, Map<Object, Object> tracked) {
+        List<WorkspaceEntry> entries = new ArrayList<>();
+        File[] children = root.toFile().listFiles();
+        if (children == null) {
+            return entries;
+        }
+        for (File child : children) {
+            Path path = normalize(child.getPath());
+            boolean holdsRoot = false;
+            for (Path other : roots) {
+                holdsRoot |= other.startsWith(path);
+            }
+            if (holdsRoot) {
+                continue;
+            }
+
+            WorkspaceEntry entry = new WorkspaceEntry(name, path);
+            measure(entry);
+            Object owner = tracked.get(path.toString());
+            if (owner != null) {
+                String[] value = owner.toString().split(":");
+                entry.videoFileId = Long.parseLong(value[0]);
+                entry.lastUsed = Math.max(entry.lastUsed, Long.parseLong(value[1]));
+            } else if ((OUTPUT_ROOT.equals(name) || TRANSCODE_TEMP_ROOT.equals(name)) && child.isDirectory()) {
+                // HLS output and chunk directories are named after their video file
+                try {
+                    entry.videoFileId = Long.parseLong(child.getName());
+                } catch (NumberFormatException ignored) {
+                    // Not a video file directory
+                }
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Total size and latest modification of everything under an entry
+     */
+    private void measure(WorkspaceEntry entry) {
+        entry.lastUsed = entry.path.toFile().lastModified();
+        try {
+            Files.walkFileTree(entry.path, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    entry.size += attrs.size();
+                    entry.lastUsed = Math.max(entry.lastUsed, attrs.lastModifiedTime().toMillis());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to measure workspace entry {}: {}", entry.path, e.getMessage());
+        }
+    }
+
+    private Map<Long, Integer> loadStatuses(List<WorkspaceEntry> entries) {
+        Set<Long> ids = new HashSet<>();
+        for (WorkspaceEntry entry : entries) {
+            if (entry.videoFileId != null) {
+                ids.add(entry.videoFileId);
+            }
+        }
+        Map<Long, Integer> statuses = new HashMap<>();
+        for (List<Long> batch : ListUtil.partition(new ArrayList<>(ids), 500)) {
+            videoFileMapper.selectList(new LambdaQueryWrapper<SysVideoFile>()
+                    .select(SysVideoFile::getId, SysVideoFile::getStatus)
+                    .in(SysVideoFile::getId, batch))
+                .forEach(file -> statuses.put(file.getId(), file.getStatus()));
+        }
+        return statuses;
+    }
+
+    /**
+     * A part file is written on every chunk, so it is only orphaned once its upload session has expired too
+     */
+    private long orphanAge(String root) {
+        long hours = workspaceConfig.getOrphanAge();
+        if (UPLOAD_TEMP_ROOT.equals(root)) {
+            hours = Math.max(hours, uploadConfig.getSessionTimeout());
+        }
+        return TimeUnit.HOURS.toMillis(hours);
+    }
+
+    private void reclaim(WorkspaceEntry entry, String reason) {
+        if (!FileUtil.del(entry.path.toFile())) {
+            log.warn("Failed to reclaim {} workspace entry {}", reason, entry.path);
+            return;
+        }
+        redisTemplate.opsForHash().delete(TRACKED_KEY, entry.path.toString());
+        meterRegistry.counter("video.workspace.reclaimed.bytes", "reason", reason).increment(entry.size);
+        log.info("Reclaimed {} workspace entry {} ({} bytes, video file {})", reason, entry.path, entry.size, entry.videoFileId);
+    }
+
+    private static boolean isFailed(Integer status) {
+        return Objects.equals(status, VideoStatus.TRANSCODE_FAILED.getCode())
+            || Objects.equals(status, VideoStatus.UPLOAD_FAILED.getCode());
+    }
+
+    private static boolean isFinished(Integer status) {
+        return Objects.equals(status, VideoStatus.PUBLISHED.getCode())
+            || Objects.equals(status, VideoStatus.OFFLINE.getCode());
+    }
+
+    private static Path normalize(String path) {
+        return Paths.get(path).toAbsolutePath().normalize();
+    }
+
+    /**
+     * A file or directory directly under a workspace root
+     */
+    private static class WorkspaceEntry {
+        private final String root;
+        private final Path path;
+        private Long videoFileId;
+        private long size;
+        private long lastUsed;
+
+        private WorkspaceEntry(String root, Path path) {
+            this.root = root;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.dromara.video.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 无锁分段播放量累加器
+ * 每个线程按线程 ID 落在一个分段上, 分段内是以 long 为键的开放寻址计数表 (键和计数都是原子数组, 不装箱),
+ * 新键用 CAS 占位, 计数用 getAndAdd 累加。刷库时逐段把当前计数表原子替换为空表, 等该表上正在进行的写入结束后
+ * 再读出, 每次累加恰好落入一次快照。计数表写满时换成两倍大小的新表, 旧表留到下次快照一并读出, 写入方从不阻塞。
+ * 视频 ID 不能为 0 (0 表示空槽)。
+ */
+public class ViewCountAccumulator {
+
+    private static final long EMPTY = 0L;
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private final Stripe[] stripes;
+    private final int initialCapacity;
+
+    public ViewCountAccumulator() {
+        this(Runtime.getRuntime().availableProcessors() * 2, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param stripes         分段数 (向上取整为 2 的幂)
+     * @param initialCapacity 每段计数表的初始槽数 (向上取整为 2 的幂)
+     */
+    public ViewCountAccumulator(int stripes, int initialCapacity) {
+        this.stripes = new Stripe[powerOfTwo(stripes)];
+        this.initialCapacity = powerOfTwo(Math.max(initialCapacity, 16));
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe(new Table(this.initialCapacity));
+        }
+    }
+
+    /**
+     * 累加视频播放量增量
+     */
+    public void add(long videoId, long delta) {
+        if (videoId == EMPTY) {
+            throw new IllegalArgumentException("videoId must not be 0");
+        }
+        Stripe stripe = stripes[stripeIndex()];
+        while (true) {
+            Table table = stripe.current.get();
+            table.writers.incrementAndGet();
+            try {
+                // 已被快照换下的表不再写入, 换到新表重试
+                if (table != stripe.current.get()) {
+                    continue;
+                }
+                if (table.add(videoId, delta)) {
+                    return;
+                }
+            } finally {
+                table.writers.decrementAndGet();
+            }
+            // 表已满: 换成两倍大小的新表, 旧表在下次快照时读出
+            if (stripe.current.compareAndSet(table, new Table(table.capacity() * 2))) {
+                stripe.retired.add(table);
+            }
+        }
+    }
+
+    /**
+     * 把另一份增量 (如写库失败的快照) 合并回来
+     */
+    public void addAll(Map<Long, Long> increments) {
+        increments.forEach((videoId, delta) -> add(videoId, delta));
+    }
+
+    /**
+     * 取出自上次快照以来的全部增量并清零
+     *
+     * @return 视频ID -> 增量, 没有增量时为空
+     */
+    public Map<Long, Long> snapshotAndReset() {
+        Map<Long, Long> snapshot = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            Table table = stripe.current.get();
+            // 空表不必替换
+            if (table.size.get() == 0 && stripe.retired.isEmpty()) {
+                continue;
+            }
+            while (!stripe.current.compareAndSet(table, new Table(Math.max(initialCapacity, table.capacity())))) {
+                table = stripe.current.get();
+            }
+            drain(table, snapshot);
+            Table retired;
+            while ((retired = stripe.retired.poll()) != null) {
+                drain(retired, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 等待已换下的表上的写入结束, 再把计数合并进快照
+     */
+    private static void drain(Table table, Map<Long, Long> snapshot) {
+        while (table.writers.get() != 0) {
+            Thread.onSpinWait();
+        }
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            long videoId = table.keys.get(slot);
+            long count = table.counts.get(slot);
+            if (videoId != EMPTY && count != 0) {
+                snapshot.merge(videoId, count, Long::sum);
+            }
+        }
+    }
+
+    private int stripeIndex() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (stripes.length - 1);
+    }
+
+    private static int powerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * 一个分段: 当前计数表和写满后被换下、尚未读出的表
+     */
+    private static final class Stripe {
+        private final AtomicReference<Table> current;
+        private final ConcurrentLinkedQueue<Table> retired = new ConcurrentLinkedQueue<>();
+
+        private Stripe(Table table) {
+            this.current = new AtomicReference<>(table);
+        }
+    }
+
+    /**
+     * 线性探测的 long -> long 计数表, 只增不删
+     */
+    private static final class Table {
+        private final AtomicLongArray keys;
+        private final AtomicLongArray counts;
+        private final int threshold;
+        private final AtomicInteger size = new AtomicInteger();
+        /**
+         * 正在写入该表的线程数
+         */
+        private final AtomicInteger writers = new AtomicInteger();
+
+        private Table(int capacity) {
+            this.keys = new AtomicLongArray(capacity);
+            this.counts = new AtomicLongArray(capacity);
+            this.threshold = capacity / 4 * 3;
+        }
+
+        private int capacity() {
+            return keys.length();
+        }
+
+        /**
+         * @return 表已满、放不下新键时为 false
+         */
+        private boolean add(long videoId, long delta) {
+            int mask = capacity() - 1;
+            int hash = (int) (videoId ^ (videoId >>> 32)) * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            for (int probes = 0; probes < capacity(); probes++) {
+                long key = keys.get(slot);
+                if (key == videoId) {
+                    counts.getAndAdd(slot, delta);
+                    return true;
+                }
+                if (key == EMPTY) {
+                    if (size.get() >= threshold) {
+                        return false;
+                    }
+                    if (keys.compareAndSet(slot, EMPTY, videoId)) {
+                        size.incrementAndGet();
+                        counts.getAndAdd(slot, delta);
+                        return true;
+                    }
+                    // 被其他线程抢占, 重新检查这个槽
+                    continue;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+    }
+}
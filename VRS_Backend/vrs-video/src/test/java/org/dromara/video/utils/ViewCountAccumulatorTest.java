@@ -0,0 +1,89 @@
+package org.dromara.video.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 播放量累加器并发单元测试
+ */
+@Tag("dev")
+@Tag("prod")
+@DisplayName("播放量累加器并发单元测试")
+public class ViewCountAccumulatorTest {
+
+    private static final int WRITERS = 8;
+    private static final int ADDS_PER_WRITER = 200_000;
+    private static final int VIDEO_IDS = 5_000;
+
+    @DisplayName("并发快照与扩容时累加总量等于快照总量")
+    @Test
+    public void testSnapshotsAddUpUnderConcurrency() throws Exception {
+        // 小表让写入过程中反复扩容, 与快照交错
+        ViewCountAccumulator accumulator = new ViewCountAccumulator(4, 16);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            Future<Map<Long, Long>>[] writers = new Future[WRITERS];
+            for (int w = 0; w < WRITERS; w++) {
+                writers[w] = executor.submit(() -> {
+                    Map<Long, Long> added = new HashMap<>();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    start.await();
+                    for (int i = 0; i < ADDS_PER_WRITER; i++) {
+                        long videoId = random.nextInt(VIDEO_IDS) + 1;
+                        long delta = random.nextInt(3) + 1;
+                        accumulator.add(videoId, delta);
+                        added.merge(videoId, delta, Long::sum);
+                    }
+                    return added;
+                });
+            }
+            Future<Map<Long, Long>> snapshots = executor.submit(() -> {
+                Map<Long, Long> drained = new HashMap<>();
+                start.await();
+                while (writing.get()) {
+                    accumulator.snapshotAndReset().forEach((videoId, count) -> drained.merge(videoId, count, Long::sum));
+                }
+                return drained;
+            });
+
+            start.countDown();
+            Map<Long, Long> expected = new HashMap<>();
+            for (Future<Map<Long, Long>> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS).forEach((videoId, count) -> expected.merge(videoId, count, Long::sum));
+            }
+            writing.set(false);
+            Map<Long, Long> actual = snapshots.get(60, TimeUnit.SECONDS);
+            accumulator.snapshotAndReset().forEach((videoId, count) -> actual.merge(videoId, count, Long::sum));
+
+            Assertions.assertEquals(expected, actual);
+            Assertions.assertTrue(accumulator.snapshotAndReset().isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @DisplayName("合并回来的增量计入下一次快照")
+    @Test
+    public void testAddAllIsCountedInNextSnapshot() {
+        ViewCountAccumulator accumulator = new ViewCountAccumulator(2, 16);
+        accumulator.add(1L, 2);
+        Map<Long, Long> failed = accumulator.snapshotAndReset();
+        accumulator.add(1L, 3);
+        accumulator.addAll(failed);
+        Assertions.assertEquals(Map.of(1L, 5L), accumulator.snapshotAndReset());
+    }
+}